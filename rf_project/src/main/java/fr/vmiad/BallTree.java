@@ -0,0 +1,188 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Arbre de boules (ball tree) pour la recherche exacte des plus proches
+ * voisins.
+ *
+ * <p>
+ * Chaque nœud est résumé par le centre de ses points et le rayon de la boule
+ * qui les contient. Un nœud est ignoré dès que la distance entre la requête
+ * et sa boule dépasse celle du K-ième voisin courant. Contrairement à l'arbre
+ * k-d, la borne utilise toutes les dimensions à la fois, ce qui la rend
+ * mieux adaptée aux descripteurs de grande dimension (ART, GFD, Zernike7).
+ * </p>
+ */
+public class BallTree implements NeighborIndex {
+
+    // Marge relative sur les rayons pour absorber les erreurs d'arrondi
+    private static final double RADIUS_MARGIN = 1e-9;
+
+    private final FeatureMatrix data; // Données indexées
+    private final int[] permutation; // Indices de lignes, regroupés par feuille
+    private final int[] nodeStart; // Début de l'intervalle de chaque nœud
+    private final int[] nodeEnd; // Fin (exclue) de l'intervalle de chaque nœud
+    private final int[] nodeLeft; // Fils gauche (-1 pour une feuille)
+    private final int[] nodeRight; // Fils droit (-1 pour une feuille)
+    private final double[] centers; // Centre de chaque nœud, ligne par ligne
+    private final double[] radii; // Rayon de chaque nœud
+    private int nodeCount; // Nombre de nœuds construits
+
+    /**
+     * Construit l'arbre sur les données d'entraînement.
+     *
+     * @param data Les données d'entraînement.
+     */
+    public BallTree(FeatureMatrix data) {
+        this.data = data;
+        int n = data.rows();
+        this.permutation = KDTree.identity(n);
+        int maxNodes = KDTree.maxNodes(n);
+        this.nodeStart = new int[maxNodes];
+        this.nodeEnd = new int[maxNodes];
+        this.nodeLeft = new int[maxNodes];
+        this.nodeRight = new int[maxNodes];
+        this.centers = new double[maxNodes * data.cols()];
+        this.radii = new double[maxNodes];
+        if (n > 0) {
+            build(0, n);
+        }
+    }
+
+    /**
+     * Construit récursivement le nœud couvrant l'intervalle [start, end).
+     *
+     * @return L'indice du nœud créé.
+     */
+    private int build(int start, int end) {
+        int node = nodeCount++;
+        int cols = data.cols();
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeLeft[node] = -1;
+        nodeRight[node] = -1;
+
+        // Centre : moyenne des points du nœud
+        int centerOffset = node * cols;
+        for (int i = start; i < end; i++) {
+            int offset = data.offset(permutation[i]);
+            for (int j = 0; j < cols; j++) {
+                centers[centerOffset + j] += data.data()[offset + j];
+            }
+        }
+        for (int j = 0; j < cols; j++) {
+            centers[centerOffset + j] /= (end - start);
+        }
+
+        // Rayon : distance au point le plus éloigné du centre
+        double maxSquared = 0.0;
+        for (int i = start; i < end; i++) {
+            maxSquared = Math.max(maxSquared, squaredDistanceToCenter(node, data.row(permutation[i])));
+        }
+        radii[node] = Math.sqrt(maxSquared) * (1 + RADIUS_MARGIN);
+
+        if (end - start > KDTree.LEAF_SIZE) {
+            int dimension = KDTree.widestDimension(data, permutation, start, end);
+            int middle = (start + end) >>> 1;
+            KDTree.selectNth(data, permutation, start, end, middle, dimension);
+            nodeLeft[node] = build(start, middle);
+            nodeRight[node] = build(middle, end);
+        }
+        return node;
+    }
+
+    /**
+     * Constructeur utilisé au rechargement d'un modèle : l'arbre est déjà
+     * construit.
+     */
+    private BallTree(FeatureMatrix data, int[] permutation, int[] nodeStart, int[] nodeEnd, int[] nodeLeft,
+            int[] nodeRight, double[] centers, double[] radii) {
+        this.data = data;
+        this.permutation = permutation;
+        this.nodeStart = nodeStart;
+        this.nodeEnd = nodeEnd;
+        this.nodeLeft = nodeLeft;
+        this.nodeRight = nodeRight;
+        this.centers = centers;
+        this.radii = radii;
+        this.nodeCount = nodeStart.length;
+    }
+
+    /**
+     * Écrit l'arbre dans un fichier de modèle (voir {@link KNNModelFile}). Seuls
+     * les nœuds construits sont enregistrés.
+     */
+    void writeTo(KNNModelFile.Output out) throws IOException {
+        KNNModelFile.writeMatrix(data, out);
+        out.writeInts(permutation);
+        out.writeInts(Arrays.copyOf(nodeStart, nodeCount));
+        out.writeInts(Arrays.copyOf(nodeEnd, nodeCount));
+        out.writeInts(Arrays.copyOf(nodeLeft, nodeCount));
+        out.writeInts(Arrays.copyOf(nodeRight, nodeCount));
+        out.writeDoubles(Arrays.copyOf(centers, nodeCount * data.cols()));
+        out.writeDoubles(Arrays.copyOf(radii, nodeCount));
+    }
+
+    /**
+     * Relit un arbre écrit par {@link #writeTo}.
+     */
+    static BallTree readFrom(KNNModelFile.Input in, String[] classNames, int[] labelIds) throws IOException {
+        FeatureMatrix data = KNNModelFile.readMatrix(in, classNames, labelIds);
+        return new BallTree(data, in.readInts(), in.readInts(), in.readInts(), in.readInts(), in.readInts(),
+                in.readDoubles(), in.readDoubles());
+    }
+
+    @Override
+    public void search(double[] query, NeighborHeap neighbors) {
+        if (nodeCount > 0) {
+            search(0, Math.sqrt(squaredDistanceToCenter(0, query)), query, neighbors);
+        }
+    }
+
+    /**
+     * @param centerDistance La distance entre la requête et le centre du nœud.
+     */
+    private void search(int node, double centerDistance, double[] query, NeighborHeap neighbors) {
+        double gap = centerDistance * (1 - RADIUS_MARGIN) - radii[node];
+        if (gap > 0 && gap * gap > neighbors.threshold()) {
+            return;
+        }
+
+        if (nodeLeft[node] < 0) {
+            for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                int row = permutation[i];
+                neighbors.offer(data.squaredDistance(row, query), row);
+            }
+            return;
+        }
+
+        // Visiter d'abord le fils dont le centre est le plus proche
+        int left = nodeLeft[node];
+        int right = nodeRight[node];
+        double leftDistance = Math.sqrt(squaredDistanceToCenter(left, query));
+        double rightDistance = Math.sqrt(squaredDistanceToCenter(right, query));
+        if (leftDistance <= rightDistance) {
+            search(left, leftDistance, query, neighbors);
+            search(right, rightDistance, query, neighbors);
+        } else {
+            search(right, rightDistance, query, neighbors);
+            search(left, leftDistance, query, neighbors);
+        }
+    }
+
+    private double squaredDistanceToCenter(int node, double[] point) {
+        return DistanceKernels.squaredL2(point, 0, centers, node * data.cols(), data.cols());
+    }
+
+    @Override
+    public int size() {
+        return data.rows();
+    }
+
+    @Override
+    public int dimension() {
+        return data.cols();
+    }
+}
@@ -0,0 +1,91 @@
+package fr.vmiad;
+
+/**
+ * Résultat d'une prédiction par lots ({@link KNN#predictBatch(FeatureMatrix)}).
+ *
+ * <p>
+ * Les résultats sont stockés dans des tableaux primitifs indexés par le numéro
+ * de la requête. Les labels sont des indices dans {@link #classNames()} et les
+ * scores par classe sont rangés ligne par ligne : le score de la classe
+ * {@code c} pour la requête {@code q} est
+ * {@code classScores()[q * classNames().length + c]}.
+ * </p>
+ */
+public class BatchPrediction {
+
+    private final String[] classNames; // Dictionnaire des classes
+    private final int[] labelIds; // Label prédit pour chaque requête
+    private final double[] scores; // Score du label prédit pour chaque requête
+    private final double[] classScores; // Score de chaque classe, requête par requête
+
+    /**
+     * Constructeur du résultat.
+     *
+     * @param classNames  Le dictionnaire des classes.
+     * @param labelIds    Le label prédit (indice de classe) pour chaque requête.
+     * @param scores      Le score du label prédit pour chaque requête.
+     * @param classScores Le score de chaque classe pour chaque requête.
+     */
+    public BatchPrediction(String[] classNames, int[] labelIds, double[] scores, double[] classScores) {
+        this.classNames = classNames;
+        this.labelIds = labelIds;
+        this.scores = scores;
+        this.classScores = classScores;
+    }
+
+    /**
+     * @return Le nombre de requêtes.
+     */
+    public int size() {
+        return labelIds.length;
+    }
+
+    /**
+     * Retourne le label prédit pour une requête.
+     *
+     * @param query Le numéro de la requête.
+     * @return Le label prédit.
+     */
+    public String getLabel(int query) {
+        return classNames[labelIds[query]];
+    }
+
+    /**
+     * Retourne le score d'une classe pour une requête.
+     *
+     * @param query Le numéro de la requête.
+     * @param label L'indice de la classe.
+     * @return La proportion des K voisins appartenant à cette classe.
+     */
+    public double getScore(int query, int label) {
+        return classScores[query * classNames.length + label];
+    }
+
+    /**
+     * @return Le dictionnaire des classes.
+     */
+    public String[] classNames() {
+        return classNames;
+    }
+
+    /**
+     * @return Le label prédit (indice de classe) pour chaque requête.
+     */
+    public int[] labelIds() {
+        return labelIds;
+    }
+
+    /**
+     * @return Le score du label prédit pour chaque requête.
+     */
+    public double[] scores() {
+        return scores;
+    }
+
+    /**
+     * @return Les scores de chaque classe, requête par requête.
+     */
+    public double[] classScores() {
+        return classScores;
+    }
+}
@@ -0,0 +1,197 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Recherche exhaustive : chaque requête est comparée à toutes les lignes de la
+ * matrice d'entraînement, avec deux raccourcis exacts.
+ *
+ * <ul>
+ * <li>Le calcul de la distance d'un candidat est abandonné dès que la somme
+ * partielle dépasse la distance du K-ième voisin courant.</li>
+ * <li>Si la distance admet une borne par la norme (L2, L1), les normes des
+ * lignes sont calculées une fois et une ligne est écartée sans calcul dès que
+ * la borne {@code |‖q‖ - ‖x‖|} dépasse le K-ième voisin courant.</li>
+ * </ul>
+ */
+public class BruteForceIndex implements NeighborIndex {
+
+    static final int QUERY_TILE = 8; // Requêtes traitées ensemble
+    static final int ROW_TILE = 256; // Lignes d'entraînement parcourues par bloc
+
+    private final FeatureMatrix data; // Données indexées
+    private final DistanceMetric metric; // Distance utilisée
+    private final double[] norms; // Norme de chaque ligne (null sans borne par la norme)
+
+    /**
+     * Constructeur de l'index, avec la distance euclidienne.
+     *
+     * @param data Les données d'entraînement.
+     */
+    public BruteForceIndex(FeatureMatrix data) {
+        this(data, DistanceMetric.L2);
+    }
+
+    /**
+     * Constructeur de l'index.
+     *
+     * @param data   Les données d'entraînement.
+     * @param metric La distance utilisée.
+     */
+    public BruteForceIndex(FeatureMatrix data, DistanceMetric metric) {
+        this.data = data;
+        this.metric = metric;
+        if (!metric.hasNormBound()) {
+            this.norms = null;
+            return;
+        }
+
+        // Les normes des lignes sont calculées une seule fois
+        this.norms = new double[data.rows()];
+        for (int row = 0; row < data.rows(); row++) {
+            norms[row] = metric.norm(data.data(), data.offset(row), data.cols());
+        }
+    }
+
+    /**
+     * Constructeur utilisé au rechargement d'un modèle : les normes sont déjà
+     * calculées.
+     */
+    private BruteForceIndex(FeatureMatrix data, DistanceMetric metric, double[] norms) {
+        this.data = data;
+        this.metric = metric;
+        this.norms = norms;
+    }
+
+    /**
+     * Écrit l'index dans un fichier de modèle (voir {@link KNNModelFile}).
+     */
+    void writeTo(KNNModelFile.Output out) throws IOException {
+        KNNModelFile.writeMatrix(data, out);
+        out.writeByte(metric.ordinal());
+        out.writeByte(norms != null ? 1 : 0);
+        if (norms != null) {
+            out.writeDoubles(norms);
+        }
+    }
+
+    /**
+     * Relit un index écrit par {@link #writeTo}.
+     */
+    static BruteForceIndex readFrom(KNNModelFile.Input in, String[] classNames, int[] labelIds)
+            throws IOException {
+        FeatureMatrix data = KNNModelFile.readMatrix(in, classNames, labelIds);
+        DistanceMetric metric = DistanceMetric.values()[in.readByte()];
+        double[] norms = in.readByte() != 0 ? in.readDoubles() : null;
+        return new BruteForceIndex(data, metric, norms);
+    }
+
+    @Override
+    public void search(double[] query, NeighborHeap neighbors) {
+        double queryNorm = metric.norm(query, 0, query.length);
+        for (int row = 0; row < data.rows(); row++) {
+            // Borne par la norme : la ligne est écartée sans lire ses valeurs
+            if (norms != null && metric.lowerBound(queryNorm, norms[row]) > neighbors.threshold()) {
+                continue;
+            }
+            offer(query, row, neighbors);
+        }
+    }
+
+    /**
+     * Recherche les voisins de plusieurs requêtes à la fois. Les requêtes sont
+     * traitées par groupes de {@link #QUERY_TILE} contre des blocs de
+     * {@link #ROW_TILE} lignes d'entraînement, de sorte qu'un bloc chargé en
+     * cache serve à tout le groupe.
+     *
+     * @param queries   Les requêtes, une par ligne.
+     * @param from      La première requête à traiter.
+     * @param to        La fin (exclue) des requêtes à traiter.
+     * @param neighbors Un tas par requête, indexé à partir de {@code from}.
+     */
+    void searchTiled(FeatureMatrix queries, int from, int to, NeighborHeap[] neighbors) {
+        for (int tileStart = from; tileStart < to; tileStart += QUERY_TILE) {
+            int tileEnd = Math.min(tileStart + QUERY_TILE, to);
+            double[][] tile = new double[tileEnd - tileStart][];
+            double[] tileNorms = new double[tileEnd - tileStart];
+            for (int q = tileStart; q < tileEnd; q++) {
+                tile[q - tileStart] = queries.row(q);
+                tileNorms[q - tileStart] = metric.norm(tile[q - tileStart], 0, queries.cols());
+            }
+            for (int blockStart = 0; blockStart < data.rows(); blockStart += ROW_TILE) {
+                int blockEnd = Math.min(blockStart + ROW_TILE, data.rows());
+                for (int q = tileStart; q < tileEnd; q++) {
+                    double[] query = tile[q - tileStart];
+                    NeighborHeap heap = neighbors[q - from];
+                    for (int row = blockStart; row < blockEnd; row++) {
+                        if (norms != null
+                                && metric.lowerBound(tileNorms[q - tileStart], norms[row]) > heap.threshold()) {
+                            continue;
+                        }
+                        offer(query, row, heap);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Mesure le rappel d'un index approché construit sur les mêmes données : la
+     * proportion des K vrais plus proches voisins (ceux de cette recherche
+     * exhaustive) qu'il retrouve.
+     *
+     * @param candidate L'index approché à évaluer.
+     * @param queries   Les points de requête.
+     * @param k         Le nombre de voisins cherchés.
+     * @return Le rappel moyen, entre 0 et 1.
+     */
+    public double recallOf(NeighborIndex candidate, FeatureMatrix queries, int k) {
+        int wanted = Math.min(k, data.rows());
+        if (queries.rows() == 0 || wanted == 0) {
+            return 1.0;
+        }
+        NeighborHeap expected = new NeighborHeap(wanted);
+        NeighborHeap found = new NeighborHeap(wanted);
+        long hits = 0;
+        for (int q = 0; q < queries.rows(); q++) {
+            double[] query = queries.row(q);
+            expected.clear();
+            found.clear();
+            search(query, expected);
+            candidate.search(query, found);
+
+            int[] foundRows = new int[found.size()];
+            for (int i = 0; i < found.size(); i++) {
+                foundRows[i] = found.index(i);
+            }
+            Arrays.sort(foundRows);
+            for (int i = 0; i < expected.size(); i++) {
+                if (Arrays.binarySearch(foundRows, expected.index(i)) >= 0) {
+                    hits++;
+                }
+            }
+        }
+        return hits / (double) ((long) wanted * queries.rows());
+    }
+
+    /**
+     * Calcule la distance d'une ligne, avec abandon au-delà du K-ième voisin, et
+     * la propose au tas.
+     */
+    private void offer(double[] query, int row, NeighborHeap neighbors) {
+        double distance = metric.distance(query, 0, data.data(), data.offset(row), data.cols(),
+                neighbors.threshold());
+        neighbors.offer(distance, row);
+    }
+
+    @Override
+    public int size() {
+        return data.rows();
+    }
+
+    @Override
+    public int dimension() {
+        return data.cols();
+    }
+}
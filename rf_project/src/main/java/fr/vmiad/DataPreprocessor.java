@@ -28,4 +28,42 @@ public class DataPreprocessor {
         // Normaliser chaque valeur
         return features.stream().map(v -> (v - min) / (max - min)).collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    /**
+     * Normalise sur place une portion d'un tableau avec la même formule que
+     * {@link #normalizeFeatures(List)}.
+     *
+     * @param values Le tableau contenant les caractéristiques.
+     * @param offset L'indice du premier élément à normaliser.
+     * @param length Le nombre d'éléments à normaliser.
+     */
+    public static void normalizeFeatures(double[] values, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        // Trouver la valeur minimale et maximale
+        double min = values[offset];
+        double max = values[offset];
+        for (int i = offset + 1; i < offset + length; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+
+        // Normaliser chaque valeur
+        double range = max - min;
+        for (int i = offset; i < offset + length; i++) {
+            values[i] = (values[i] - min) / range;
+        }
+    }
+
+    /**
+     * Normalise sur place chaque ligne d'une matrice de caractéristiques.
+     *
+     * @param matrix La matrice à normaliser.
+     */
+    public static void normalizeRows(FeatureMatrix matrix) {
+        for (int i = 0; i < matrix.rows(); i++) {
+            normalizeFeatures(matrix.data(), matrix.offset(i), matrix.cols());
+        }
+    }
+}
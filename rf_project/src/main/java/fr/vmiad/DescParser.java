@@ -0,0 +1,269 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lecture rapide des fichiers descripteurs (un nombre décimal par ligne),
+ * directement depuis les octets du fichier vers un {@code double[]}.
+ *
+ * <p>
+ * Le fichier est lu d'un bloc dans un tampon direct réutilisé d'un appel à
+ * l'autre (ou projeté en mémoire au-delà de {@value #MAP_THRESHOLD} octets),
+ * puis analysé sans créer de {@link String} par ligne. Les nombres de 18
+ * chiffres significatifs au plus dont l'exposant décimal reste petit sont
+ * convertis exactement par une seule multiplication ou division (méthode de
+ * Clinger) ; les autres, et les formes particulières acceptées par
+ * {@link Double#parseDouble(String)} (NaN, Infinity, hexadécimal...), passent
+ * par {@link Double#parseDouble(String)}. Le résultat est donc identique, au
+ * bit près, à celui de {@link Double#parseDouble(String)} sur chaque ligne.
+ * </p>
+ *
+ * <p>
+ * Les espaces en début et fin de ligne sont ignorés, ainsi que les lignes
+ * vides. Une instance n'est pas thread-safe : en utiliser une par thread.
+ * </p>
+ */
+public class DescParser {
+
+    static final int MAP_THRESHOLD = 1 << 20; // Taille au-delà de laquelle le fichier est projeté
+    private static final int INITIAL_CAPACITY = 4096; // Taille initiale du tampon de lecture
+    private static final long MAX_EXACT_MANTISSA = 1L << 53; // Entiers représentables exactement
+    private static final int MAX_FAST_DIGITS = 18; // Chiffres significatifs sans dépassement d'un long
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY); // Tampon réutilisé
+    private double[] values = new double[64]; // Valeurs lues par parse(Path)
+    private String source; // Nom du fichier en cours, pour les messages d'erreur
+
+    /**
+     * Lit un fichier descripteur.
+     *
+     * @param file Le fichier à lire.
+     * @return Les valeurs du fichier, dans l'ordre des lignes.
+     * @throws IOException           Si le fichier ne peut pas être lu.
+     * @throws NumberFormatException Si une ligne n'est pas un nombre (le
+     *                               message indique le fichier et la ligne).
+     */
+    public double[] parse(Path file) throws IOException {
+        ByteBuffer bytes = load(file);
+        int count = 0;
+        int[] position = { 0 };
+        int line = 1;
+        while (position[0] < bytes.limit()) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            int read = parseLine(bytes, position, line++, values, count);
+            count += read;
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Lit un fichier descripteur dans un tableau fourni, par exemple une
+     * ligne d'une matrice préallouée.
+     *
+     * @param file   Le fichier à lire.
+     * @param target Le tableau à remplir.
+     * @param offset L'indice de la première valeur dans le tableau.
+     * @return Le nombre de valeurs lues.
+     * @throws IOException              Si le fichier ne peut pas être lu.
+     * @throws NumberFormatException    Si une ligne n'est pas un nombre.
+     * @throws IllegalArgumentException Si le fichier contient plus de valeurs
+     *                                  que la place disponible.
+     */
+    public int parse(Path file, double[] target, int offset) throws IOException {
+        return parse(file, target, offset, target.length - offset);
+    }
+
+    /**
+     * Lit un fichier descripteur dans une zone d'un tableau fourni, par
+     * exemple une ligne d'une matrice préallouée, sans déborder sur la suite.
+     *
+     * @param file     Le fichier à lire.
+     * @param target   Le tableau à remplir.
+     * @param offset   L'indice de la première valeur dans le tableau.
+     * @param capacity Le nombre maximal de valeurs à écrire.
+     * @return Le nombre de valeurs lues.
+     * @throws IOException              Si le fichier ne peut pas être lu.
+     * @throws NumberFormatException    Si une ligne n'est pas un nombre.
+     * @throws IllegalArgumentException Si le fichier contient plus de
+     *                                  {@code capacity} valeurs.
+     */
+    public int parse(Path file, double[] target, int offset, int capacity) throws IOException {
+        ByteBuffer bytes = load(file);
+        int count = 0;
+        int[] position = { 0 };
+        int line = 1;
+        while (position[0] < bytes.limit()) {
+            if (count == capacity) {
+                skipBlank(bytes, position);
+                if (position[0] < bytes.limit()) {
+                    throw new IllegalArgumentException(
+                            file + " : plus de " + count + " valeurs, place insuffisante dans le tableau");
+                }
+                break;
+            }
+            count += parseLine(bytes, position, line++, target, offset + count);
+        }
+        return count;
+    }
+
+    /**
+     * Charge le contenu du fichier : dans le tampon réutilisé, ou par
+     * projection pour les gros fichiers.
+     */
+    private ByteBuffer load(Path file) throws IOException {
+        source = file.toString();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if (size > buffer.capacity()) {
+                buffer = ByteBuffer.allocateDirect(Integer.highestOneBit((int) size) << 1);
+            }
+            buffer.clear();
+            while (channel.read(buffer) >= 0 && buffer.hasRemaining()) {
+                // Lecture jusqu'à la fin du fichier
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Avance jusqu'au prochain caractère non blanc (fins de ligne comprises).
+     */
+    private static void skipBlank(ByteBuffer bytes, int[] position) {
+        int p = position[0];
+        while (p < bytes.limit() && (bytes.get(p) & 0xFF) <= ' ') {
+            p++;
+        }
+        position[0] = p;
+    }
+
+    /**
+     * Analyse une ligne à partir de {@code position[0]} et avance après sa fin
+     * de ligne.
+     *
+     * @return 1 si une valeur a été écrite dans {@code target[index]}, 0 pour
+     *         une ligne vide.
+     */
+    private int parseLine(ByteBuffer bytes, int[] position, int line, double[] target, int index) {
+        int limit = bytes.limit();
+        int end = position[0];
+        while (end < limit && bytes.get(end) != '\n') {
+            end++;
+        }
+        int next = end + 1;
+
+        // Bornes de la ligne sans les blancs (comme String.trim())
+        int start = position[0];
+        while (start < end && (bytes.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        position[0] = next;
+        if (start == end) {
+            return 0;
+        }
+        target[index] = parseNumber(bytes, start, end, line);
+        return 1;
+    }
+
+    /**
+     * Convertit les octets [start, end) en double.
+     */
+    private double parseNumber(ByteBuffer bytes, int start, int end, int line) {
+        int p = start;
+        boolean negative = false;
+        byte b = bytes.get(p);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            p++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0; // Exposant décimal appliqué à la mantisse
+        int digits = 0;
+        boolean exact = true;
+        while (p < end && (b = bytes.get(p)) >= '0' && b <= '9') {
+            if (mantissa != 0 || b != '0') {
+                if (++significantDigits > MAX_FAST_DIGITS) {
+                    exact = false;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+            }
+            digits++;
+            p++;
+        }
+        if (p < end && bytes.get(p) == '.') {
+            p++;
+            while (p < end && (b = bytes.get(p)) >= '0' && b <= '9') {
+                if (mantissa != 0 || b != '0') {
+                    if (++significantDigits > MAX_FAST_DIGITS) {
+                        exact = false;
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                }
+                exponent--;
+                digits++;
+                p++;
+            }
+        }
+        if (digits > 0 && p < end && ((b = bytes.get(p)) == 'e' || b == 'E')) {
+            p++;
+            boolean negativeExponent = false;
+            if (p < end && ((b = bytes.get(p)) == '-' || b == '+')) {
+                negativeExponent = b == '-';
+                p++;
+            }
+            int exponentDigits = 0;
+            int value = 0;
+            while (p < end && (b = bytes.get(p)) >= '0' && b <= '9') {
+                if (value < 100000) {
+                    value = value * 10 + (b - '0');
+                }
+                exponentDigits++;
+                p++;
+            }
+            if (exponentDigits == 0) {
+                p = -1; // Exposant vide : forme invalide
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (p == end && digits > 0 && exact && mantissa <= MAX_EXACT_MANTISSA
+                && exponent >= -22 && exponent <= 22) {
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent]
+                    : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        return parseSlow(bytes, start, end, line);
+    }
+
+    /**
+     * Conversion de repli par {@link Double#parseDouble(String)}.
+     */
+    private double parseSlow(ByteBuffer bytes, int start, int end, int line) {
+        byte[] token = new byte[end - start];
+        bytes.get(start, token);
+        String text = new String(token, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(source + ":" + line + " : nombre invalide \"" + text + "\"");
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package fr.vmiad;
 
 import java.io.File;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Classe pour gérer les fichiers descripteurs.
@@ -20,6 +31,16 @@ import java.util.List;
  */
 public class DescReader {
 
+    // Un analyseur par thread : son tampon est réutilisé d'un fichier à l'autre
+    private static final ThreadLocal<DescParser> PARSERS = ThreadLocal.withInitial(DescParser::new);
+
+    /**
+     * @return L'analyseur du thread courant.
+     */
+    static DescParser parser() {
+        return PARSERS.get();
+    }
+
     /**
      * Lit le contenu d'un fichier descripteur ligne par ligne.
      * Chaque ligne est convertie en un double et ajoutée à une liste.
@@ -33,20 +54,219 @@ public class DescReader {
      *                               double.
      */
     public static List<Double> readDesc(String filePath) throws IOException {
+        double[] values = readFeatures(Paths.get(filePath));
+        List<Double> features = new ArrayList<>(values.length);
+        for (double value : values) {
+            features.add(value);
+        }
+        return features;
+    }
 
-        List<Double> features = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            // Lire chaque ligne du fichier
-            while ((line = br.readLine()) != null) {
-                // Supprimer les espaces inutiles et convertir en double
-                features.add(Double.parseDouble(line.trim()));
-            }
+    /**
+     * Lit un fichier descripteur directement dans un tableau de doubles, sans
+     * passer par une chaîne par ligne (voir {@link DescParser}).
+     *
+     * @param file Le fichier descripteur à lire.
+     * @return Les valeurs du fichier, dans l'ordre des lignes.
+     * @throws IOException           Si le fichier ne peut pas être lu.
+     * @throws NumberFormatException Si une ligne ne peut pas être convertie en
+     *                               double (le message indique la ligne).
+     */
+    public static double[] readFeatures(Path file) throws IOException {
+        try {
+            return PARSERS.get().parse(file);
         } catch (NumberFormatException e) {
-            System.err.println("Erreur de conversion de ligne en double dans le fichier : " + filePath);
+            System.err.println("Erreur de conversion de ligne en double dans le fichier : " + file);
             throw e;
         }
-        return features;
+    }
+
+    /**
+     * Lit tous les fichiers descripteurs d'un répertoire en parallèle (voir
+     * {@link #readAll(List, int)}), dans l'ordre de leurs noms.
+     *
+     * @param directory   Le répertoire à parcourir.
+     * @param extension   L'extension des fichiers à lire.
+     * @param concurrency Le nombre maximal de lectures simultanées.
+     * @return La matrice des fichiers lus et les erreurs par fichier.
+     */
+    public static LoadResult loadDirectory(Path directory, String extension, int concurrency) {
+        List<File> files = listDescFiles(directory.toString(), extension);
+        files.sort(Comparator.comparing(File::getName));
+        List<Path> paths = new ArrayList<>(files.size());
+        for (File file : files) {
+            paths.add(file.toPath());
+        }
+        return readAll(paths, concurrency);
+    }
+
+    /**
+     * Lit des fichiers descripteurs en parallèle, directement dans une matrice
+     * préallouée. Le premier fichier lisible fixe la dimension ; les autres
+     * sont répartis entre {@code concurrency} threads qui écrivent chacun dans
+     * la ligne de son fichier, de sorte que l'ordre des lignes est celui de la
+     * liste quel que soit l'ordre de fin des lectures. Un fichier illisible,
+     * mal formé ou de dimension différente est écarté et son erreur
+     * conservée, sans interrompre les autres lectures. Le label de chaque
+     * ligne est déduit du nom du fichier.
+     *
+     * <p>
+     * Les lectures sont faites par un pool borné de threads créé pour l'appel
+     * (les threads virtuels ne sont pas disponibles en Java 17) : le
+     * recouvrement des attentes d'entrée-sortie est ce qui compte sur un
+     * stockage réseau, plus que le nombre de cœurs.
+     * </p>
+     *
+     * @param files       Les fichiers à lire.
+     * @param concurrency Le nombre maximal de lectures simultanées.
+     * @return La matrice des fichiers lus et les erreurs par fichier.
+     * @throws IllegalStateException Si la lecture est interrompue.
+     */
+    public static LoadResult readAll(List<Path> files, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Nombre de lectures simultanées invalide : " + concurrency);
+        }
+        int rows = files.size();
+        Exception[] failures = new Exception[rows];
+
+        // Le premier fichier lisible fixe la dimension de la matrice
+        double[] first = null;
+        int firstRow = 0;
+        for (; firstRow < rows && first == null; firstRow++) {
+            try {
+                first = PARSERS.get().parse(files.get(firstRow));
+            } catch (IOException | RuntimeException e) {
+                failures[firstRow] = e;
+            }
+        }
+        int cols = first == null ? 0 : first.length;
+        double[] data = new double[rows * cols];
+        if (first != null) {
+            System.arraycopy(first, 0, data, (firstRow - 1) * cols, cols);
+        }
+
+        AtomicInteger next = new AtomicInteger(firstRow);
+        Callable<Void> worker = () -> {
+            DescParser parser = PARSERS.get();
+            for (int row = next.getAndIncrement(); row < rows; row = next.getAndIncrement()) {
+                try {
+                    int count = parser.parse(files.get(row), data, row * cols, cols);
+                    if (count != cols) {
+                        throw new IOException("Dimension " + count + " au lieu de " + cols + " : " + files.get(row));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failures[row] = e;
+                }
+            }
+            return null;
+        };
+        int threads = Math.max(1, Math.min(concurrency, rows - firstRow));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> future : pool.invokeAll(Collections.nCopies(threads, worker))) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Lecture des descripteurs interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Erreur lors de la lecture des descripteurs", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return toLoadResult(files, data, cols, failures);
+    }
+
+    /**
+     * Assemble le résultat d'une lecture groupée : retire de la matrice les
+     * lignes en erreur en conservant l'ordre, et déduit le label de chaque
+     * ligne du nom de son fichier.
+     *
+     * @param files    Les fichiers lus, un par ligne de {@code data}.
+     * @param data     Les valeurs ligne par ligne (compactées sur place).
+     * @param cols     Le nombre de valeurs par ligne.
+     * @param failures L'erreur de chaque ligne écartée, null sinon.
+     * @return La matrice des lignes lues et les erreurs par fichier.
+     */
+    static LoadResult toLoadResult(List<Path> files, double[] data, int cols, Exception[] failures) {
+        int rows = files.size();
+        Map<Path, Exception> errors = new LinkedHashMap<>();
+        List<String> fileNames = new ArrayList<>(rows);
+        List<Integer> labelIds = new ArrayList<>(rows);
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> classNames = new ArrayList<>();
+        int kept = 0;
+        for (int row = 0; row < rows; row++) {
+            Path file = files.get(row);
+            if (failures[row] != null) {
+                errors.put(file, failures[row]);
+                continue;
+            }
+            if (kept != row) {
+                System.arraycopy(data, row * cols, data, kept * cols, cols);
+            }
+            String fileName = file.getFileName().toString();
+            fileNames.add(fileName);
+            labelIds.add(dictionary.computeIfAbsent(ClassName.getLabelFromFile(fileName), label -> {
+                classNames.add(label);
+                return classNames.size() - 1;
+            }));
+            kept++;
+        }
+        FeatureMatrix matrix = new FeatureMatrix(kept, cols, kept == rows ? data : Arrays.copyOf(data, kept * cols),
+                fileNames.toArray(new String[0]), labelIds.stream().mapToInt(Integer::intValue).toArray(),
+                classNames.toArray(new String[0]));
+        return new LoadResult(matrix, errors);
+    }
+
+    /**
+     * Résultat d'une lecture groupée : la matrice des fichiers lus et
+     * l'erreur de chaque fichier écarté.
+     */
+    public static final class LoadResult {
+        private final FeatureMatrix matrix;
+        private final Map<Path, Exception> errors;
+
+        LoadResult(FeatureMatrix matrix, Map<Path, Exception> errors) {
+            this.matrix = matrix;
+            this.errors = Collections.unmodifiableMap(errors);
+        }
+
+        /**
+         * @return La matrice des fichiers lus, dans l'ordre demandé.
+         */
+        public FeatureMatrix getMatrix() {
+            return matrix;
+        }
+
+        /**
+         * @return L'erreur de chaque fichier écarté, dans l'ordre demandé.
+         */
+        public Map<Path, Exception> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Affiche les erreurs sur la sortie d'erreur.
+         */
+        public void printErrors() {
+            for (Map.Entry<Path, Exception> error : errors.entrySet()) {
+                System.err.println("Fichier ignoré : " + error.getKey() + " (" + error.getValue().getMessage() + ")");
+            }
+        }
+    }
+
+    /**
+     * Ouvre un corpus de descripteurs regroupé dans un seul fichier binaire
+     * (voir {@link PackedCorpus}), projeté en mémoire sans copie.
+     *
+     * @param file Le fichier du corpus.
+     * @return Le corpus.
+     * @throws IOException Si le fichier est illisible, d'une autre version ou
+     *                     tronqué.
+     */
+    public static PackedCorpus openPacked(Path file) throws IOException {
+        return PackedCorpus.open(file);
     }
 
     /**
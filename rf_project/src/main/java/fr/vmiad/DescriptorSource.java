@@ -0,0 +1,264 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sources de descripteurs lus à la demande, sous forme de {@link Stream} :
+ * rien n'est chargé avant la consommation, et seuls les descripteurs en cours
+ * de traitement sont en mémoire. Normalisation, prédiction et évaluation
+ * peuvent ainsi s'enchaîner sur des corpus plus grands que le tas, et les
+ * premiers résultats arrivent dès les premiers fichiers lus.
+ *
+ * <ul>
+ * <li>{@link #directory(Path, String)} parcourt un répertoire avec un
+ * {@link DirectoryStream}, sans parcours préalable : la taille du flux est
+ * inconnue. Un flux parallèle en détache des lots de chemins de taille
+ * croissante ; la lecture des fichiers d'un lot se fait dans le thread qui le
+ * traite.</li>
+ * <li>{@link #packed(PackedCorpus)} parcourt un corpus projeté en mémoire : la
+ * taille est exacte et le découpage se fait par moitiés.</li>
+ * </ul>
+ *
+ * <p>
+ * Le flux d'un répertoire doit être fermé (try-with-resources) pour libérer
+ * le {@link DirectoryStream}.
+ * </p>
+ */
+public final class DescriptorSource {
+
+    static final int BATCH_UNIT = 64; // Taille du premier lot détaché d'un répertoire
+    static final int MAX_BATCH = 1 << 14; // Taille maximale d'un lot
+    static final int MIN_PACKED_SPLIT = 256; // Lignes en dessous desquelles un corpus n'est plus découpé
+
+    private DescriptorSource() {
+    }
+
+    /**
+     * Flux des descripteurs d'un répertoire. Les fichiers illisibles ou mal
+     * formés sont signalés sur la sortie d'erreur et ignorés.
+     *
+     * @param directory Le répertoire à parcourir.
+     * @param extension L'extension des fichiers à lire.
+     * @return Le flux des descripteurs, à fermer après usage.
+     * @throws IOException Si le répertoire ne peut pas être ouvert.
+     */
+    public static Stream<DescriptorWithLabel> directory(Path directory, String extension) throws IOException {
+        return directory(directory, extension, (file, e) -> System.err
+                .println("Fichier ignoré : " + file + " (" + e.getMessage() + ")"));
+    }
+
+    /**
+     * Flux des descripteurs d'un répertoire.
+     *
+     * @param directory Le répertoire à parcourir.
+     * @param extension L'extension des fichiers à lire.
+     * @param onError   Appelé pour chaque fichier illisible ou mal formé (qui
+     *                  est ensuite ignoré), éventuellement depuis plusieurs
+     *                  threads.
+     * @return Le flux des descripteurs, à fermer après usage.
+     * @throws IOException Si le répertoire ne peut pas être ouvert.
+     */
+    public static Stream<DescriptorWithLabel> directory(Path directory, String extension,
+            BiConsumer<Path, Exception> onError) throws IOException {
+        DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + extension);
+        DirectorySpliterator spliterator = new DirectorySpliterator(files.iterator(), onError);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                files.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Flux des descripteurs d'un corpus projeté en mémoire. Chaque
+     * descripteur reçoit une copie de sa ligne.
+     *
+     * @param corpus Le corpus.
+     * @return Le flux des descripteurs.
+     */
+    public static Stream<DescriptorWithLabel> packed(PackedCorpus corpus) {
+        return StreamSupport.stream(new PackedSpliterator(corpus, 0, corpus.rows()), false);
+    }
+
+    /**
+     * Lit un descripteur, ou signale l'erreur et renvoie null.
+     */
+    private static DescriptorWithLabel read(Path file, BiConsumer<Path, Exception> onError) {
+        try {
+            String fileName = file.getFileName().toString();
+            return new DescriptorWithLabel(fileName, DescReader.parser().parse(file),
+                    ClassName.getLabelFromFile(fileName));
+        } catch (IOException | RuntimeException e) {
+            onError.accept(file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Parcours paresseux d'un répertoire. {@link #trySplit()} détache les
+     * prochains chemins (pas leur contenu) par lots de taille croissante. La
+     * taille est inconnue ({@link Long#MAX_VALUE}) tant que le répertoire n'a
+     * pas été entièrement parcouru.
+     */
+    private static final class DirectorySpliterator implements Spliterator<DescriptorWithLabel> {
+        private final Iterator<Path> files; // Chemins restants, lus à la demande
+        private final BiConsumer<Path, Exception> onError;
+        private long estimate = Long.MAX_VALUE; // Nombre de fichiers restants (inconnu avant la fin)
+        private int batch; // Taille du dernier lot détaché
+
+        DirectorySpliterator(Iterator<Path> files, BiConsumer<Path, Exception> onError) {
+            this.files = files;
+            this.onError = onError;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super DescriptorWithLabel> action) {
+            while (files.hasNext()) {
+                DescriptorWithLabel descriptor = read(files.next(), onError);
+                if (descriptor != null) {
+                    action.accept(descriptor);
+                    return true;
+                }
+            }
+            estimate = 0;
+            return false;
+        }
+
+        @Override
+        public Spliterator<DescriptorWithLabel> trySplit() {
+            if (!files.hasNext()) {
+                estimate = 0;
+                return null;
+            }
+            int size = Math.min(MAX_BATCH, batch + BATCH_UNIT);
+            Path[] paths = new Path[size];
+            int count = 0;
+            while (count < size && files.hasNext()) {
+                paths[count++] = files.next();
+            }
+            batch = count;
+            return new PathSpliterator(paths, 0, count, onError);
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Lot de chemins détaché d'un répertoire, lu à la demande et découpable
+     * par moitiés.
+     */
+    private static final class PathSpliterator implements Spliterator<DescriptorWithLabel> {
+        private final Path[] paths;
+        private final BiConsumer<Path, Exception> onError;
+        private int index; // Prochain chemin
+        private final int end; // Fin (exclue)
+
+        PathSpliterator(Path[] paths, int index, int end, BiConsumer<Path, Exception> onError) {
+            this.paths = paths;
+            this.index = index;
+            this.end = end;
+            this.onError = onError;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super DescriptorWithLabel> action) {
+            while (index < end) {
+                DescriptorWithLabel descriptor = read(paths[index++], onError);
+                if (descriptor != null) {
+                    action.accept(descriptor);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<DescriptorWithLabel> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            PathSpliterator prefix = new PathSpliterator(paths, index, middle, onError);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index; // Majorant : les fichiers en erreur sont ignorés
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Parcours d'un intervalle de lignes d'un corpus projeté.
+     */
+    private static final class PackedSpliterator implements Spliterator<DescriptorWithLabel> {
+        private final PackedCorpus corpus;
+        private int row; // Prochaine ligne
+        private final int end; // Fin (exclue)
+
+        PackedSpliterator(PackedCorpus corpus, int row, int end) {
+            this.corpus = corpus;
+            this.row = row;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super DescriptorWithLabel> action) {
+            if (row >= end) {
+                return false;
+            }
+            double[] features = new double[corpus.cols()];
+            corpus.readRow(row, features, 0);
+            action.accept(new DescriptorWithLabel(corpus.getFileName(row), features, corpus.getLabel(row)));
+            row++;
+            return true;
+        }
+
+        @Override
+        public Spliterator<DescriptorWithLabel> trySplit() {
+            if (end - row < 2 * MIN_PACKED_SPLIT) {
+                return null;
+            }
+            int middle = (row + end) >>> 1;
+            PackedSpliterator prefix = new PackedSpliterator(corpus, row, middle);
+            row = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - row;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
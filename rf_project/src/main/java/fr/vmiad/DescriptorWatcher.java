@@ -0,0 +1,321 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alimente un {@link OnlineKNN} à partir d'un répertoire de fichiers
+ * descripteurs surveillé par un {@link WatchService}.
+ *
+ * <p>
+ * Les fichiers créés, modifiés ou supprimés sont notés au fil des événements ;
+ * un lot est appliqué quand aucun nouvel événement n'est arrivé pendant
+ * {@link #setDebounceMillis(long) le délai d'attente} (ou au plus tard après
+ * {@value #MAX_DEBOUNCE_FACTOR} fois ce délai en cas d'activité continue).
+ * Seuls les fichiers du lot sont relus ; un fichier modifié remplace sa
+ * référence précédente, un fichier supprimé retire la sienne. Tout le lot est
+ * publié en une fois par {@link OnlineKNN#update(long[], FeatureMatrix)} : une
+ * prédiction voit le modèle et ses effectifs par classe
+ * ({@link OnlineKNN#getClassCounts()}) soit avant, soit après le lot.
+ * </p>
+ *
+ * <p>
+ * Un fichier illisible ou mal formé (par exemple en cours d'écriture) est
+ * signalé et sa référence précédente est conservée ; il sera relu au prochain
+ * événement. Si le système signale des événements perdus, tout le répertoire
+ * est resynchronisé. Un lot qui échoue entièrement (erreur du modèle) est
+ * signalé et laissé de côté sans arrêter la surveillance.
+ * </p>
+ *
+ * <p>
+ * Si le modèle a une capacité, les fichiers dont la référence a été évincée
+ * ne sont plus suivis ; ils seront rechargés s'ils changent à nouveau.
+ * </p>
+ */
+public class DescriptorWatcher implements AutoCloseable {
+
+    static final long DEFAULT_DEBOUNCE_MILLIS = 200; // Délai d'attente par défaut
+    static final int MAX_DEBOUNCE_FACTOR = 10; // Attente maximale d'un lot, en multiples du délai
+
+    private final Path directory; // Répertoire surveillé
+    private final String extension; // Extension des fichiers descripteurs
+    private final OnlineKNN model; // Modèle alimenté
+    private final WatchService watchService; // Surveillance du répertoire
+    private final Map<String, Long> ids = new HashMap<>(); // Identifiant dans le modèle de chaque fichier
+    private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS; // Délai sans événement avant d'appliquer un lot
+    private boolean normalizeRows = true; // Normalisation de chaque descripteur lu
+    private volatile long batches; // Nombre de lots appliqués
+    private volatile long errors; // Nombre de fichiers illisibles ou mal formés
+    private volatile long failedBatches; // Nombre de lots abandonnés sur une erreur du modèle
+    private Thread thread; // Thread de surveillance
+
+    /**
+     * Constructeur : le répertoire est surveillé dès la construction, de sorte
+     * qu'aucun changement survenu pendant {@link #loadExisting()} n'est perdu.
+     *
+     * @param directory Le répertoire à surveiller.
+     * @param extension L'extension des fichiers descripteurs.
+     * @param model     Le modèle à alimenter.
+     * @throws IOException Si le répertoire ne peut pas être surveillé.
+     */
+    public DescriptorWatcher(Path directory, String extension, OnlineKNN model) throws IOException {
+        this.directory = directory;
+        this.extension = extension;
+        this.model = model;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /**
+     * @param debounceMillis Le délai sans événement avant d'appliquer un lot
+     *                       (en ms).
+     */
+    public void setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Active ou désactive la normalisation de chaque descripteur lu (avec
+     * {@link DataPreprocessor#normalizeFeatures(double[], int, int)}, activée
+     * par défaut comme dans {@link MainKNN}).
+     *
+     * @param normalizeRows true pour normaliser.
+     */
+    public void setNormalizeRows(boolean normalizeRows) {
+        this.normalizeRows = normalizeRows;
+    }
+
+    /**
+     * Charge les fichiers déjà présents dans le répertoire, en un seul lot.
+     *
+     * @return Le nombre de fichiers chargés.
+     * @throws IOException Si le répertoire ne peut pas être parcouru.
+     */
+    public int loadExisting() throws IOException {
+        return apply(listFiles());
+    }
+
+    /**
+     * Lance la surveillance dans un thread (démon) dédié.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Surveillance déjà lancée");
+        }
+        thread = new Thread(this::watch, "descriptor-watcher-" + directory.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Boucle de surveillance : regroupe les événements puis applique chaque
+     * lot, jusqu'à la fermeture.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                Set<String> changed = new LinkedHashSet<>();
+                boolean[] overflow = { false };
+                WatchKey key = watchService.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(debounceMillis * MAX_DEBOUNCE_FACTOR);
+                while (key != null) {
+                    if (!collect(key, changed, overflow)) {
+                        return; // Répertoire supprimé ou inaccessible
+                    }
+                    long remaining = Math.min(TimeUnit.MILLISECONDS.toNanos(debounceMillis),
+                            deadline - System.nanoTime());
+                    key = remaining > 0 ? watchService.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                }
+                if (overflow[0]) {
+                    changed.addAll(listFiles());
+                    synchronized (this) {
+                        changed.addAll(ids.keySet());
+                    }
+                }
+                try {
+                    apply(changed);
+                } catch (RuntimeException e) {
+                    System.err.println("Lot de " + changed.size() + " fichiers ignoré dans " + directory + " : " + e);
+                    failedBatches++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Fermeture normale
+        } catch (IOException e) {
+            System.err.println("Surveillance de " + directory + " interrompue : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Note les fichiers concernés par les événements d'une clé.
+     *
+     * @return false si la clé n'est plus valide.
+     */
+    private boolean collect(WatchKey key, Set<String> changed, boolean[] overflow) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow[0] = true;
+                continue;
+            }
+            String name = event.context().toString();
+            if (name.endsWith(extension)) {
+                changed.add(name);
+            }
+        }
+        return key.reset();
+    }
+
+    /**
+     * @return Les noms des fichiers descripteurs présents dans le répertoire.
+     */
+    private List<String> listFiles() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + extension)) {
+            for (Path file : stream) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Relit les fichiers indiqués et applique les changements au modèle en une
+     * seule publication.
+     *
+     * @param names Les noms des fichiers ajoutés, modifiés ou supprimés.
+     * @return Le nombre de fichiers (re)chargés.
+     */
+    private synchronized int apply(Iterable<String> names) {
+        List<Long> removals = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        List<String> loaded = new ArrayList<>();
+        List<double[]> features = new ArrayList<>();
+        DescParser parser = DescReader.parser();
+        for (String name : names) {
+            Path file = directory.resolve(name);
+            Long previous = ids.get(name);
+            if (!Files.isRegularFile(file)) {
+                if (previous != null) {
+                    removals.add(previous);
+                    deleted.add(name);
+                }
+                continue;
+            }
+            try {
+                double[] values = parser.parse(file);
+                if (values.length != model.dimension()) {
+                    throw new IOException("Dimension " + values.length + " au lieu de " + model.dimension());
+                }
+                if (normalizeRows) {
+                    DataPreprocessor.normalizeFeatures(values, 0, values.length);
+                }
+                if (previous != null) {
+                    removals.add(previous);
+                }
+                loaded.add(name);
+                features.add(values);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Fichier ignoré : " + file + " (" + e.getMessage() + ")");
+                errors++;
+            }
+        }
+        if (removals.isEmpty() && loaded.isEmpty()) {
+            return 0;
+        }
+
+        int dimension = model.dimension();
+        double[] data = new double[loaded.size() * dimension];
+        String[] fileNames = loaded.toArray(new String[0]);
+        int[] labelIds = new int[loaded.size()];
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> classNames = new ArrayList<>();
+        for (int row = 0; row < loaded.size(); row++) {
+            System.arraycopy(features.get(row), 0, data, row * dimension, dimension);
+            labelIds[row] = dictionary.computeIfAbsent(ClassName.getLabelFromFile(fileNames[row]), label -> {
+                classNames.add(label);
+                return classNames.size() - 1;
+            });
+        }
+        FeatureMatrix insertions = new FeatureMatrix(loaded.size(), dimension, data, fileNames, labelIds,
+                classNames.toArray(new String[0]));
+        Set<Long> evicted = new HashSet<>();
+        long first = model.update(removals.stream().mapToLong(Long::longValue).toArray(), insertions, evicted::add);
+        // Le suivi n'est modifié qu'une fois le lot publié
+        ids.keySet().removeAll(deleted);
+        for (int row = 0; row < fileNames.length; row++) {
+            ids.put(fileNames[row], first + row);
+        }
+        if (!evicted.isEmpty()) {
+            ids.values().removeIf(evicted::contains);
+        }
+        batches++;
+        return loaded.size();
+    }
+
+    /**
+     * @return Le nombre de lots appliqués (chargement initial compris).
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * @return Le nombre de fichiers illisibles ou mal formés rencontrés.
+     */
+    public long getErrorCount() {
+        return errors;
+    }
+
+    /**
+     * @return Le nombre de lots abandonnés sur une erreur du modèle.
+     */
+    public long getFailedBatchCount() {
+        return failedBatches;
+    }
+
+    /**
+     * @return Le nombre de fichiers suivis dans le modèle.
+     */
+    public synchronized int trackedFiles() {
+        return ids.size();
+    }
+
+    /**
+     * Arrête la surveillance et attend la fin du thread.
+     *
+     * @throws IOException Si la surveillance ne peut pas être fermée.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        Thread current;
+        synchronized (this) {
+            current = thread;
+        }
+        if (current != null) {
+            try {
+                current.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
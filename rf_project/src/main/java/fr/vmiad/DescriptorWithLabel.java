@@ -1,14 +1,22 @@
 package fr.vmiad;
 
+import java.util.AbstractList;
 import java.util.List;
 
 /**
  * Classe représentant un fichier de descripteurs, ses caractéristiques, et son
  * label.
+ *
+ * <p>
+ * Les caractéristiques peuvent être fournies sous forme de liste ou de tableau
+ * de doubles (descripteurs lus à la demande par {@link DescriptorSource}) ;
+ * dans ce dernier cas, {@link #getFeatures()} est une vue du tableau.
+ * </p>
  */
 public class DescriptorWithLabel {
     private String fileName; // Nom du fichier
     private List<Double> features; // Liste des caractéristiques du fichier
+    private double[] values; // Caractéristiques sous forme de tableau (null si construit à partir d'une liste)
     private String label; // Le label (classe) du fichier
 
     /**
@@ -24,6 +32,30 @@ public class DescriptorWithLabel {
         this.label = label;
     }
 
+    /**
+     * Constructeur à partir d'un tableau de caractéristiques, non copié.
+     *
+     * @param fileName Le nom du fichier.
+     * @param values   Les caractéristiques associées au fichier.
+     * @param label    Le label (classe) associé au fichier.
+     */
+    public DescriptorWithLabel(String fileName, double[] values, String label) {
+        this.fileName = fileName;
+        this.values = values;
+        this.features = new AbstractList<Double>() {
+            @Override
+            public Double get(int index) {
+                return values[index];
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+        this.label = label;
+    }
+
     /**
      * Retourne le nom du fichier.
      *
@@ -42,6 +74,17 @@ public class DescriptorWithLabel {
         return features;
     }
 
+    /**
+     * Retourne les caractéristiques sous forme de tableau : le tableau fourni
+     * au constructeur (non copié, modifiable par exemple pour une
+     * normalisation sur place), ou une copie de la liste.
+     *
+     * @return Les caractéristiques.
+     */
+    public double[] getFeatureArray() {
+        return values != null ? values : FeatureMatrix.toArray(features);
+    }
+
     /**
      * Retourne le label (classe) associé au fichier.
      *
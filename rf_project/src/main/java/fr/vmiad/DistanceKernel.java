@@ -0,0 +1,24 @@
+package fr.vmiad;
+
+/**
+ * Noyaux de calcul élémentaires sur deux vecteurs stockés dans des tableaux.
+ * Voir {@link DistanceKernels} pour le choix de l'implémentation.
+ */
+interface DistanceKernel {
+
+    /**
+     * @return La somme des carrés des différences (distance euclidienne au
+     *         carré).
+     */
+    double squaredL2(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * @return La somme des valeurs absolues des différences (distance L1).
+     */
+    double l1(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * @return Le produit scalaire des deux vecteurs.
+     */
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+}
@@ -0,0 +1,114 @@
+package fr.vmiad;
+
+/**
+ * Noyaux de distance partagés par KNN, K-Means et le calcul d'inertie.
+ *
+ * <p>
+ * L'implémentation est choisie une fois au chargement de la classe : la
+ * version vectorielle ({@code jdk.incubator.vector}) si le module a été
+ * ajouté au lancement de la JVM ({@code --add-modules jdk.incubator.vector}),
+ * la version scalaire sinon. La propriété système
+ * {@code fr.vmiad.kernels=scalar} force la version scalaire.
+ * </p>
+ *
+ * <p>
+ * Tous les vecteurs sont désignés par un tableau et l'indice de leur premier
+ * élément, ce qui permet de travailler directement sur les lignes d'une
+ * {@link FeatureMatrix}.
+ * </p>
+ */
+public final class DistanceKernels {
+
+    private static final DistanceKernel KERNEL = selectKernel();
+
+    private DistanceKernels() {
+    }
+
+    /**
+     * Choisit l'implémentation des noyaux au démarrage.
+     *
+     * @return Le noyau vectoriel s'il est utilisable, le noyau scalaire sinon.
+     */
+    private static DistanceKernel selectKernel() {
+        if ("scalar".equalsIgnoreCase(System.getProperty("fr.vmiad.kernels"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarDistanceKernel();
+        }
+        try {
+            // Chargement par réflexion : la classe référence le module incubateur
+            return (DistanceKernel) Class.forName("fr.vmiad.VectorDistanceKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarDistanceKernel();
+        }
+    }
+
+    /**
+     * @return Le nom de l'implémentation utilisée ("vector" ou "scalar").
+     */
+    public static String implementation() {
+        return KERNEL instanceof ScalarDistanceKernel ? "scalar" : "vector";
+    }
+
+    /**
+     * Calcule la distance euclidienne au carré entre deux vecteurs.
+     *
+     * @param a       Tableau du premier vecteur.
+     * @param aOffset Indice de début du premier vecteur.
+     * @param b       Tableau du second vecteur.
+     * @param bOffset Indice de début du second vecteur.
+     * @param length  La dimension des vecteurs.
+     * @return La distance euclidienne au carré.
+     */
+    public static double squaredL2(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return KERNEL.squaredL2(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Calcule la distance L1 (somme des écarts absolus) entre deux vecteurs.
+     *
+     * @param a       Tableau du premier vecteur.
+     * @param aOffset Indice de début du premier vecteur.
+     * @param b       Tableau du second vecteur.
+     * @param bOffset Indice de début du second vecteur.
+     * @param length  La dimension des vecteurs.
+     * @return La distance L1.
+     */
+    public static double l1(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return KERNEL.l1(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Calcule le produit scalaire de deux vecteurs.
+     *
+     * @param a       Tableau du premier vecteur.
+     * @param aOffset Indice de début du premier vecteur.
+     * @param b       Tableau du second vecteur.
+     * @param bOffset Indice de début du second vecteur.
+     * @param length  La dimension des vecteurs.
+     * @return Le produit scalaire.
+     */
+    public static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return KERNEL.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Calcule la distance cosinus (1 - similarité cosinus) entre deux vecteurs.
+     * Un vecteur nul est considéré à distance 1 de tout autre vecteur.
+     *
+     * @param a       Tableau du premier vecteur.
+     * @param aOffset Indice de début du premier vecteur.
+     * @param b       Tableau du second vecteur.
+     * @param bOffset Indice de début du second vecteur.
+     * @param length  La dimension des vecteurs.
+     * @return La distance cosinus, entre 0 et 2.
+     */
+    public static double cosine(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double normA = KERNEL.dot(a, aOffset, a, aOffset, length);
+        double normB = KERNEL.dot(b, bOffset, b, bOffset, length);
+        if (normA == 0.0 || normB == 0.0) {
+            return 1.0;
+        }
+        return 1.0 - KERNEL.dot(a, aOffset, b, bOffset, length) / Math.sqrt(normA * normB);
+    }
+}
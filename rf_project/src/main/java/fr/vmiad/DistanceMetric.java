@@ -0,0 +1,196 @@
+package fr.vmiad;
+
+/**
+ * Mesures de distance utilisables pour la recherche des plus proches voisins.
+ *
+ * <p>
+ * Chaque mesure sait abandonner un calcul dès que la somme partielle dépasse
+ * une borne (la distance du K-ième voisin courant) : un candidat perdant est
+ * rejeté après quelques blocs de {@value #BLOCK} dimensions. La valeur
+ * renvoyée est alors seulement garantie supérieure à la borne. Pour L2 et L1,
+ * la norme des vecteurs fournit en plus une borne inférieure de la distance
+ * ({@code |‖q‖ - ‖x‖| <= ‖q - x‖}), qui permet d'écarter un candidat sans
+ * lire ses caractéristiques.
+ * </p>
+ */
+public enum DistanceMetric {
+
+    /**
+     * Distance euclidienne, exprimée au carré (la racine ne change pas l'ordre
+     * des voisins).
+     */
+    L2 {
+        @Override
+        public double distance(double[] a, int aOffset, double[] b, int bOffset, int length, double bound) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i += BLOCK) {
+                sum += DistanceKernels.squaredL2(a, aOffset + i, b, bOffset + i, Math.min(BLOCK, length - i));
+                if (sum > bound) {
+                    return sum;
+                }
+            }
+            return sum;
+        }
+
+        @Override
+        public boolean hasNormBound() {
+            return true;
+        }
+
+        @Override
+        public double norm(double[] a, int offset, int length) {
+            return Math.sqrt(DistanceKernels.dot(a, offset, a, offset, length));
+        }
+
+        @Override
+        public double lowerBound(double normA, double normB) {
+            double gap = Math.abs(normA - normB) * (1 - NORM_MARGIN);
+            return gap * gap;
+        }
+    },
+
+    /**
+     * Distance L1 (somme des écarts absolus).
+     */
+    L1 {
+        @Override
+        public double distance(double[] a, int aOffset, double[] b, int bOffset, int length, double bound) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i += BLOCK) {
+                sum += DistanceKernels.l1(a, aOffset + i, b, bOffset + i, Math.min(BLOCK, length - i));
+                if (sum > bound) {
+                    return sum;
+                }
+            }
+            return sum;
+        }
+
+        @Override
+        public boolean hasNormBound() {
+            return true;
+        }
+
+        @Override
+        public double norm(double[] a, int offset, int length) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                sum += Math.abs(a[offset + i]);
+            }
+            return sum;
+        }
+
+        @Override
+        public double lowerBound(double normA, double normB) {
+            return Math.abs(normA - normB) * (1 - NORM_MARGIN);
+        }
+    },
+
+    /**
+     * Distance du chi-deux : somme de (a - b)² / (|a| + |b|), les dimensions
+     * où les deux valeurs sont nulles étant ignorées. Adaptée aux
+     * caractéristiques positives (histogrammes, descripteurs normalisés) ; les
+     * valeurs absolues gardent chaque terme positif, condition de l'abandon
+     * anticipé.
+     */
+    CHI_SQUARE {
+        @Override
+        public double distance(double[] a, int aOffset, double[] b, int bOffset, int length, double bound) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                double x = a[aOffset + i];
+                double y = b[bOffset + i];
+                double total = Math.abs(x) + Math.abs(y);
+                if (total != 0.0) {
+                    double diff = x - y;
+                    sum += diff * diff / total;
+                }
+                if ((i & (BLOCK - 1)) == BLOCK - 1 && sum > bound) {
+                    return sum;
+                }
+            }
+            return sum;
+        }
+    },
+
+    /**
+     * Distance cosinus (1 - similarité cosinus). La somme partielle n'étant pas
+     * croissante, le calcul n'est jamais abandonné.
+     */
+    COSINE {
+        @Override
+        public double distance(double[] a, int aOffset, double[] b, int bOffset, int length, double bound) {
+            return DistanceKernels.cosine(a, aOffset, b, bOffset, length);
+        }
+    };
+
+    /** Nombre de dimensions traitées entre deux tests d'abandon. */
+    static final int BLOCK = 16;
+
+    // Marge relative sur les bornes par la norme pour absorber les erreurs
+    // d'arrondi : un candidat à égalité avec le K-ième voisin n'est jamais écarté
+    private static final double NORM_MARGIN = 1e-9;
+
+    /**
+     * Calcule la distance complète entre deux vecteurs.
+     *
+     * @param a       Tableau du premier vecteur.
+     * @param aOffset Indice de début du premier vecteur.
+     * @param b       Tableau du second vecteur.
+     * @param bOffset Indice de début du second vecteur.
+     * @param length  La dimension des vecteurs.
+     * @return La distance.
+     */
+    public double distance(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return distance(a, aOffset, b, bOffset, length, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Calcule la distance entre deux vecteurs, en abandonnant le calcul dès
+     * que la somme partielle dépasse la borne. Si la distance est inférieure
+     * ou égale à la borne, la valeur renvoyée est exacte (identique à celle
+     * calculée sans borne).
+     *
+     * @param a       Tableau du premier vecteur.
+     * @param aOffset Indice de début du premier vecteur.
+     * @param b       Tableau du second vecteur.
+     * @param bOffset Indice de début du second vecteur.
+     * @param length  La dimension des vecteurs.
+     * @param bound   La borne au-delà de laquelle le calcul peut s'arrêter.
+     * @return La distance, ou une valeur supérieure à la borne.
+     */
+    public abstract double distance(double[] a, int aOffset, double[] b, int bOffset, int length,
+            double bound);
+
+    /**
+     * @return true si {@link #norm} et {@link #lowerBound} fournissent une
+     *         borne inférieure utilisable.
+     */
+    public boolean hasNormBound() {
+        return false;
+    }
+
+    /**
+     * Calcule la norme d'un vecteur associée à cette distance.
+     *
+     * @param a      Tableau du vecteur.
+     * @param offset Indice de début du vecteur.
+     * @param length La dimension du vecteur.
+     * @return La norme (0 si la distance n'a pas de borne par la norme).
+     */
+    public double norm(double[] a, int offset, int length) {
+        return 0.0;
+    }
+
+    /**
+     * Retourne une borne inférieure de la distance entre deux vecteurs
+     * connaissant seulement leurs normes.
+     *
+     * @param normA La norme du premier vecteur.
+     * @param normB La norme du second vecteur.
+     * @return Une valeur inférieure ou égale à la distance (0 si aucune borne
+     *         n'est connue).
+     */
+    public double lowerBound(double normA, double normB) {
+        return 0.0;
+    }
+}
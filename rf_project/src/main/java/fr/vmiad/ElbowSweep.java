@@ -0,0 +1,220 @@
+package fr.vmiad;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Méthode du coude : exécute K-Means pour une plage de valeurs de K et
+ * rassemble l'inertie, le nombre d'itérations et la durée de chaque exécution.
+ *
+ * <p>
+ * Sans démarrage à chaud, les valeurs de K sont traitées en même temps sur
+ * l'exécuteur fourni (la durée totale est proche de celle de l'exécution la
+ * plus longue si l'exécuteur a assez de threads). Avec démarrage à chaud,
+ * l'exécution K + 1 part de la solution K dont on coupe en deux le cluster de
+ * plus forte inertie : les exécutions s'enchaînent mais chacune converge en
+ * moins d'itérations.
+ * </p>
+ */
+public class ElbowSweep {
+
+    private final int minClusters; // Plus petite valeur de K
+    private final int maxClusters; // Plus grande valeur de K
+    private final int maxIterations; // Nombre maximum d'itérations de chaque exécution
+    private final long seed; // Graine de base (K est ajouté pour chaque exécution)
+    private KMeans.Algorithm algorithm = KMeans.Algorithm.ELKAN; // Variante de l'affectation
+    private boolean warmStart; // Démarrage à chaud de K + 1 depuis K
+
+    /**
+     * Constructeur.
+     *
+     * @param minClusters   La plus petite valeur de K (au moins 1).
+     * @param maxClusters   La plus grande valeur de K.
+     * @param maxIterations Le nombre maximum d'itérations de chaque exécution.
+     * @param seed          La graine des initialisations.
+     */
+    public ElbowSweep(int minClusters, int maxClusters, int maxIterations, long seed) {
+        if (minClusters < 1 || maxClusters < minClusters) {
+            throw new IllegalArgumentException("Plage de K invalide : " + minClusters + ".." + maxClusters);
+        }
+        this.minClusters = minClusters;
+        this.maxClusters = maxClusters;
+        this.maxIterations = maxIterations;
+        this.seed = seed;
+    }
+
+    /**
+     * @param algorithm La variante de l'affectation (Elkan par défaut).
+     */
+    public void setAlgorithm(KMeans.Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @param warmStart true pour démarrer chaque K + 1 depuis la solution K.
+     */
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Exécute la méthode du coude.
+     *
+     * @param data     Les données (non modifiées).
+     * @param executor L'exécuteur sur lequel lancer les exécutions.
+     * @return Un résultat par valeur de K, dans l'ordre croissant de K.
+     * @throws IllegalStateException Si une exécution échoue.
+     */
+    public List<Result> run(FeatureMatrix data, ExecutorService executor) {
+        List<CompletableFuture<Fit>> fits = new ArrayList<>();
+        CompletableFuture<Fit> previous = null;
+        for (int k = minClusters; k <= maxClusters; k++) {
+            int clusters = k;
+            CompletableFuture<Fit> fit;
+            if (warmStart && previous != null) {
+                fit = previous.thenApplyAsync(from -> fit(data, clusters, split(data, from)), executor);
+            } else {
+                fit = CompletableFuture.supplyAsync(() -> fit(data, clusters, null), executor);
+            }
+            fits.add(fit);
+            previous = fit;
+        }
+
+        List<Result> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<Fit> fit : fits) {
+                results.add(fit.join().result);
+            }
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Erreur lors de la méthode du coude", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Une exécution de K-Means, chronométrée.
+     *
+     * @param initialCentroids Les centroïdes initiaux, ou null pour
+     *                         l'initialisation par défaut.
+     */
+    private Fit fit(FeatureMatrix data, int k, double[] initialCentroids) {
+        long start = System.nanoTime();
+        KMeans kmeans = new KMeans(k, maxIterations, seed + k);
+        kmeans.setAlgorithm(algorithm);
+        KMeansResult fit = initialCentroids == null ? kmeans.fit(data) : kmeans.fit(data, initialCentroids);
+        double millis = (System.nanoTime() - start) / 1e6;
+        return new Fit(fit, new Result(k, fit.getInertia(), fit.getIterations(), millis, initialCentroids != null));
+    }
+
+    /**
+     * Centroïdes initiaux pour K + 1 : ceux de la solution K, plus le point le
+     * plus éloigné de son centroïde dans le cluster de plus forte inertie.
+     */
+    private static double[] split(FeatureMatrix data, Fit from) {
+        KMeansResult previous = from.fit;
+        int k = previous.getNumClusters();
+        int d = data.cols();
+        double[] clusterInertia = previous.getClusterInertia();
+        int worst = 0;
+        for (int c = 1; c < k; c++) {
+            if (clusterInertia[c] > clusterInertia[worst]) {
+                worst = c;
+            }
+        }
+        int[] labels = previous.getLabels();
+        double[] centroids = previous.getCentroids();
+        int farthest = 0;
+        double farthestDistance = -1.0;
+        for (int p = 0; p < data.rows(); p++) {
+            if (labels[p] != worst) {
+                continue;
+            }
+            double distance = DistanceKernels.squaredL2(data.data(), data.offset(p), centroids, worst * d, d);
+            if (distance > farthestDistance) {
+                farthest = p;
+                farthestDistance = distance;
+            }
+        }
+
+        double[] initial = Arrays.copyOf(centroids, (k + 1) * d);
+        System.arraycopy(data.data(), data.offset(farthest), initial, k * d, d);
+        return initial;
+    }
+
+    /**
+     * Met en forme les résultats en tableau, une ligne par valeur de K.
+     *
+     * @param results Les résultats de {@link #run}.
+     * @return Le tableau, prêt à afficher.
+     */
+    public static String toTable(List<Result> results) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "%4s  %14s  %10s  %10s  %s%n", "K", "Inertie", "Itérations",
+                "Durée (ms)", "Départ"));
+        for (Result result : results) {
+            table.append(String.format(Locale.ROOT, "%4d  %14.6f  %10d  %10.1f  %s%n", result.getClusters(),
+                    result.getInertia(), result.getIterations(), result.getWallTimeMillis(),
+                    result.isWarmStarted() ? "à chaud" : "initialisation"));
+        }
+        return table.toString();
+    }
+
+    /**
+     * Solution complète d'une exécution, gardée pour le démarrage à chaud.
+     */
+    private static final class Fit {
+        final KMeansResult fit;
+        final Result result;
+
+        Fit(KMeansResult fit, Result result) {
+            this.fit = fit;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Résultat d'une exécution de la méthode du coude.
+     */
+    public static final class Result {
+        private final int clusters;
+        private final double inertia;
+        private final int iterations;
+        private final double wallTimeMillis;
+        private final boolean warmStarted;
+
+        Result(int clusters, double inertia, int iterations, double wallTimeMillis, boolean warmStarted) {
+            this.clusters = clusters;
+            this.inertia = inertia;
+            this.iterations = iterations;
+            this.wallTimeMillis = wallTimeMillis;
+            this.warmStarted = warmStarted;
+        }
+
+        /** @return La valeur de K. */
+        public int getClusters() {
+            return clusters;
+        }
+
+        /** @return L'inertie de la solution. */
+        public double getInertia() {
+            return inertia;
+        }
+
+        /** @return Le nombre d'itérations effectuées. */
+        public int getIterations() {
+            return iterations;
+        }
+
+        /** @return La durée de l'exécution (en ms). */
+        public double getWallTimeMillis() {
+            return wallTimeMillis;
+        }
+
+        /** @return true si l'exécution est partie de la solution K - 1. */
+        public boolean isWarmStarted() {
+            return warmStarted;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package fr.vmiad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matrice dense de caractéristiques stockée ligne par ligne dans un unique
+ * tableau {@code double[]}.
+ *
+ * <p>
+ * Chaque ligne correspond à un descripteur. La matrice porte également, pour
+ * chaque ligne, le nom du fichier d'origine et son label. Les labels sont
+ * encodés par un indice entier dans un dictionnaire de classes (dans l'ordre
+ * de première apparition), ce qui permet de compter les votes sans passer par
+ * des chaînes de caractères.
+ * </p>
+ */
+public class FeatureMatrix {
+
+    private final int rows; // Nombre de descripteurs
+    private final int cols; // Dimension des descripteurs
+    private final double[] data; // Valeurs, ligne par ligne (rows * cols)
+    private final String[] fileNames; // Nom du fichier de chaque ligne (peut contenir null)
+    private final int[] labelIds; // Indice de classe de chaque ligne
+    private final String[] classNames; // Dictionnaire des classes
+
+    /**
+     * Constructeur de la matrice.
+     *
+     * @param rows       Nombre de lignes.
+     * @param cols       Nombre de colonnes (dimension).
+     * @param data       Les valeurs ligne par ligne, de taille rows * cols.
+     * @param fileNames  Les noms de fichiers (un par ligne).
+     * @param labelIds   L'indice de classe de chaque ligne.
+     * @param classNames Le dictionnaire des classes.
+     * @throws IllegalArgumentException Si les tailles sont incohérentes.
+     */
+    public FeatureMatrix(int rows, int cols, double[] data, String[] fileNames, int[] labelIds,
+            String[] classNames) {
+        if (data.length != (long) rows * cols || fileNames.length != rows || labelIds.length != rows) {
+            throw new IllegalArgumentException("Dimensions incohérentes pour la matrice : " + rows + " x " + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+        this.fileNames = fileNames;
+        this.labelIds = labelIds;
+        this.classNames = classNames;
+    }
+
+    /**
+     * Construit une matrice à partir d'une liste de descripteurs.
+     *
+     * @param descriptors Les descripteurs (tous de même dimension).
+     * @return La matrice correspondante.
+     * @throws IllegalArgumentException Si les descripteurs n'ont pas tous la même
+     *                                  dimension, ou s'ils sont trop nombreux
+     *                                  pour un seul tableau.
+     */
+    public static FeatureMatrix fromDescriptors(List<DescriptorWithLabel> descriptors) {
+        int rows = descriptors.size();
+        int cols = rows == 0 ? 0 : descriptors.get(0).getFeatures().size();
+        double[] data = new double[size(rows, cols)];
+        String[] fileNames = new String[rows];
+        int[] labelIds = new int[rows];
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> classNames = new ArrayList<>();
+
+        for (int i = 0; i < rows; i++) {
+            DescriptorWithLabel descriptor = descriptors.get(i);
+            copyInto(descriptor.getFeatures(), data, i * cols, cols);
+            fileNames[i] = descriptor.getFileName();
+            labelIds[i] = dictionary.computeIfAbsent(descriptor.getLabel(), label -> {
+                classNames.add(label);
+                return classNames.size() - 1;
+            });
+        }
+        return new FeatureMatrix(rows, cols, data, fileNames, labelIds, classNames.toArray(new String[0]));
+    }
+
+    /**
+     * Construit une matrice sans labels à partir d'une liste de vecteurs (par
+     * exemple pour K-Means).
+     *
+     * @param features Les vecteurs (tous de même dimension).
+     * @return La matrice correspondante.
+     * @throws IllegalArgumentException Si les vecteurs n'ont pas tous la même
+     *                                  dimension, ou s'ils sont trop nombreux
+     *                                  pour un seul tableau.
+     */
+    public static FeatureMatrix fromFeatures(List<List<Double>> features) {
+        int rows = features.size();
+        int cols = rows == 0 ? 0 : features.get(0).size();
+        double[] data = new double[size(rows, cols)];
+        for (int i = 0; i < rows; i++) {
+            copyInto(features.get(i), data, i * cols, cols);
+        }
+        return new FeatureMatrix(rows, cols, data, new String[rows], new int[rows], new String[] { null });
+    }
+
+    /**
+     * Convertit une liste de caractéristiques en tableau primitif.
+     *
+     * @param features La liste de caractéristiques.
+     * @return Un nouveau tableau contenant les mêmes valeurs.
+     */
+    public static double[] toArray(List<Double> features) {
+        double[] values = new double[features.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = features.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Nombre de valeurs d'une matrice rows x cols.
+     *
+     * @throws IllegalArgumentException Si ce nombre dépasse la taille maximale
+     *                                  d'un tableau.
+     */
+    private static int size(int rows, int cols) {
+        try {
+            return Math.multiplyExact(rows, cols);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Matrice trop grande pour un seul tableau : " + rows + " x " + cols);
+        }
+    }
+
+    private static void copyInto(List<Double> features, double[] data, int offset, int cols) {
+        if (features.size() != cols) {
+            throw new IllegalArgumentException(
+                    "Dimension inattendue : " + features.size() + " au lieu de " + cols);
+        }
+        for (int j = 0; j < cols; j++) {
+            data[offset + j] = features.get(j);
+        }
+    }
+
+    /**
+     * @return Le nombre de lignes (descripteurs).
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return Le nombre de colonnes (dimension des descripteurs).
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * Retourne le tableau sous-jacent. La ligne {@code i} commence à l'indice
+     * {@code i * cols()}. Le tableau n'est pas copié : toute modification est
+     * visible dans la matrice.
+     *
+     * @return Les valeurs ligne par ligne.
+     */
+    public double[] data() {
+        return data;
+    }
+
+    /**
+     * Retourne l'indice du premier élément d'une ligne dans {@link #data()}.
+     *
+     * @param row L'indice de la ligne.
+     * @return L'indice de début de la ligne.
+     */
+    public int offset(int row) {
+        return row * cols;
+    }
+
+    /**
+     * Retourne une valeur de la matrice.
+     *
+     * @param row L'indice de la ligne.
+     * @param col L'indice de la colonne.
+     * @return La valeur correspondante.
+     */
+    public double get(int row, int col) {
+        return data[row * cols + col];
+    }
+
+    /**
+     * Calcule la distance euclidienne au carré entre une ligne et un vecteur.
+     *
+     * @param row   L'indice de la ligne.
+     * @param query Le vecteur, de dimension {@link #cols()}.
+     * @return La distance euclidienne au carré.
+     */
+    public double squaredDistance(int row, double[] query) {
+        return DistanceMetric.L2.distance(query, 0, data, row * cols, cols);
+    }
+
+    /**
+     * Calcule la distance euclidienne au carré entre deux lignes de la matrice.
+     *
+     * @param row      L'indice de la première ligne.
+     * @param otherRow L'indice de la seconde ligne.
+     * @return La distance euclidienne au carré.
+     */
+    public double squaredDistance(int row, int otherRow) {
+        return DistanceMetric.L2.distance(data, otherRow * cols, data, row * cols, cols);
+    }
+
+    /**
+     * Retourne une copie d'une ligne.
+     *
+     * @param row L'indice de la ligne.
+     * @return Un nouveau tableau contenant la ligne.
+     */
+    public double[] row(int row) {
+        return Arrays.copyOfRange(data, row * cols, (row + 1) * cols);
+    }
+
+    /**
+     * Retourne une copie d'un intervalle de lignes, avec le même dictionnaire
+     * des classes.
+     *
+     * @param from La première ligne.
+     * @param to   La fin (exclue) de l'intervalle.
+     * @return Une nouvelle matrice contenant les lignes [from, to).
+     */
+    public FeatureMatrix slice(int from, int to) {
+        return new FeatureMatrix(to - from, cols, Arrays.copyOfRange(data, from * cols, to * cols),
+                Arrays.copyOfRange(fileNames, from, to), Arrays.copyOfRange(labelIds, from, to), classNames);
+    }
+
+    /**
+     * Retourne le nom du fichier associé à une ligne.
+     *
+     * @param row L'indice de la ligne.
+     * @return Le nom du fichier, ou null s'il n'est pas connu.
+     */
+    public String getFileName(int row) {
+        return fileNames[row];
+    }
+
+    /**
+     * Retourne le label associé à une ligne.
+     *
+     * @param row L'indice de la ligne.
+     * @return Le label de la ligne.
+     */
+    public String getLabel(int row) {
+        return classNames[labelIds[row]];
+    }
+
+    /**
+     * Retourne l'indice de classe associé à une ligne.
+     *
+     * @param row L'indice de la ligne.
+     * @return L'indice du label dans {@link #classNames()}.
+     */
+    public int getLabelId(int row) {
+        return labelIds[row];
+    }
+
+    /**
+     * @return Les indices de classe de chaque ligne (tableau non copié).
+     */
+    public int[] labelIds() {
+        return labelIds;
+    }
+
+    /**
+     * @return Le dictionnaire des classes (tableau non copié).
+     */
+    public String[] classNames() {
+        return classNames;
+    }
+
+    /**
+     * @return Les noms de fichiers de chaque ligne (tableau non copié).
+     */
+    public String[] fileNames() {
+        return fileNames;
+    }
+
+    /**
+     * Reconvertit une ligne en liste, pour les API qui manipulent encore des
+     * {@code List<Double>}.
+     *
+     * @param row L'indice de la ligne.
+     * @return Une nouvelle liste contenant la ligne.
+     */
+    public List<Double> rowAsList(int row) {
+        List<Double> values = new ArrayList<>(cols);
+        int offset = row * cols;
+        for (int j = 0; j < cols; j++) {
+            values.add(data[offset + j]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,485 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Index approché des plus proches voisins par graphe HNSW (Hierarchical
+ * Navigable Small World, Malkov et Yashunin).
+ *
+ * <p>
+ * Chaque point est relié à ses voisins dans plusieurs couches de graphe : les
+ * couches hautes, peu peuplées, servent à s'approcher rapidement de la zone
+ * de la requête, puis la couche 0, qui contient tous les points, est explorée
+ * avec une liste de {@code efSearch} candidats. Les paramètres règlent le
+ * compromis vitesse / précision :
+ * </p>
+ * <ul>
+ * <li>{@code m} : nombre de liens par point et par couche (2m en couche 0) ;</li>
+ * <li>{@code efConstruction} : largeur de la recherche lors de
+ * l'insertion ;</li>
+ * <li>{@code efSearch} : largeur de la recherche lors d'une requête (au moins
+ * K).</li>
+ * </ul>
+ * <p>
+ * Le résultat est approché : {@link #recall(FeatureMatrix, int)} mesure la
+ * proportion des vrais voisins retrouvés par rapport à la recherche
+ * exhaustive.
+ * </p>
+ */
+public class HNSWIndex implements NeighborIndex {
+
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 50;
+    private static final int MAX_LEVEL = 16; // Nombre maximal de couches
+
+    private final FeatureMatrix data; // Données indexées
+    private final int m; // Nombre de liens par couche (hors couche 0)
+    private final int maxLinks0; // Nombre de liens en couche 0
+    private final int efConstruction; // Largeur de recherche à l'insertion
+    private volatile int efSearch; // Largeur de recherche à la requête
+    private volatile long searchVersion; // Incrémenté à chaque changement d'efSearch
+    private final int[] nodeLevel; // Couche la plus haute de chaque point
+    private final int[][] links; // Liens de chaque point, couche par couche
+    private int entryPoint = -1; // Point d'entrée (dans la couche la plus haute)
+    private int maxLevel = -1; // Couche la plus haute du graphe
+    private final ThreadLocal<VisitedSet> visited; // Points déjà visités, par thread
+
+    /**
+     * Construit l'index avec les paramètres par défaut.
+     *
+     * @param data Les données d'entraînement.
+     */
+    public HNSWIndex(FeatureMatrix data) {
+        this(data, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH, 42L);
+    }
+
+    /**
+     * Construit l'index.
+     *
+     * @param data           Les données d'entraînement.
+     * @param m              Le nombre de liens par point et par couche.
+     * @param efConstruction La largeur de la recherche lors de l'insertion.
+     * @param efSearch       La largeur de la recherche lors d'une requête.
+     * @param seed           La graine du tirage des couches, pour la
+     *                       reproductibilité.
+     * @throws IllegalArgumentException Si un paramètre est invalide.
+     */
+    public HNSWIndex(FeatureMatrix data, int m, int efConstruction, int efSearch, long seed) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("Paramètres HNSW invalides : m=" + m + ", efConstruction="
+                    + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.data = data;
+        this.m = m;
+        this.maxLinks0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        int n = data.rows();
+        this.nodeLevel = new int[n];
+        this.links = new int[n][];
+        this.visited = ThreadLocal.withInitial(() -> new VisitedSet(n));
+
+        Random random = new Random(seed);
+        double levelFactor = 1.0 / Math.log(m);
+        for (int node = 0; node < n; node++) {
+            int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor);
+            insert(node, Math.min(level, MAX_LEVEL));
+        }
+    }
+
+    /**
+     * Constructeur utilisé au rechargement d'un modèle : le graphe est déjà
+     * construit.
+     */
+    private HNSWIndex(FeatureMatrix data, int m, int efConstruction, int efSearch, int[] nodeLevel, int[][] links,
+            int entryPoint, int maxLevel) {
+        this.data = data;
+        this.m = m;
+        this.maxLinks0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.nodeLevel = nodeLevel;
+        this.links = links;
+        this.entryPoint = entryPoint;
+        this.maxLevel = maxLevel;
+        int n = data.rows();
+        this.visited = ThreadLocal.withInitial(() -> new VisitedSet(n));
+    }
+
+    /**
+     * Écrit le graphe dans un fichier de modèle (voir {@link KNNModelFile}). Les
+     * liens de tous les points sont mis bout à bout : la taille du bloc de
+     * chaque point se déduit de sa couche.
+     */
+    void writeTo(KNNModelFile.Output out) throws IOException {
+        KNNModelFile.writeMatrix(data, out);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(efSearch);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        out.writeInts(nodeLevel);
+        int total = 0;
+        for (int[] nodeLinks : links) {
+            total += nodeLinks.length;
+        }
+        int[] flat = new int[total];
+        int position = 0;
+        for (int[] nodeLinks : links) {
+            System.arraycopy(nodeLinks, 0, flat, position, nodeLinks.length);
+            position += nodeLinks.length;
+        }
+        out.writeInts(flat);
+    }
+
+    /**
+     * Relit un graphe écrit par {@link #writeTo}.
+     */
+    static HNSWIndex readFrom(KNNModelFile.Input in, String[] classNames, int[] labelIds) throws IOException {
+        FeatureMatrix data = KNNModelFile.readMatrix(in, classNames, labelIds);
+        int m = in.readInt();
+        int efConstruction = in.readInt();
+        int efSearch = in.readInt();
+        int entryPoint = in.readInt();
+        int maxLevel = in.readInt();
+        int[] nodeLevel = in.readInts();
+        int[] flat = in.readInts();
+
+        HNSWIndex index = new HNSWIndex(data, m, efConstruction, efSearch, nodeLevel, new int[nodeLevel.length][],
+                entryPoint, maxLevel);
+        int position = 0;
+        for (int node = 0; node < nodeLevel.length; node++) {
+            int length = index.blockOffset(nodeLevel[node] + 1);
+            index.links[node] = Arrays.copyOfRange(flat, position, position + length);
+            position += length;
+        }
+        if (position != flat.length) {
+            throw new IOException("Liens HNSW incohérents avec les couches des points");
+        }
+        return index;
+    }
+
+    /**
+     * Modifie la largeur de la recherche utilisée par les requêtes. Les
+     * résultats changeant, {@link #searchVersion()} est incrémenté (un
+     * {@link KNN} vide alors son cache de prédictions).
+     *
+     * @param efSearch La nouvelle largeur (au moins 1).
+     */
+    public synchronized void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch doit être positif : " + efSearch);
+        }
+        if (efSearch != this.efSearch) {
+            this.efSearch = efSearch;
+            searchVersion++;
+        }
+    }
+
+    @Override
+    public long searchVersion() {
+        return searchVersion;
+    }
+
+    /**
+     * @return La largeur de la recherche utilisée par les requêtes.
+     */
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    @Override
+    public void search(double[] query, NeighborHeap neighbors) {
+        if (entryPoint < 0) {
+            return;
+        }
+        int entry = entryPoint;
+        double entryDistance = data.squaredDistance(entry, query);
+        for (int level = maxLevel; level > 0; level--) {
+            NeighborHeap closest = searchLayer(query, entry, entryDistance, 1, level);
+            entry = closest.index(0);
+            entryDistance = closest.distance(0);
+        }
+        NeighborHeap candidates = searchLayer(query, entry, entryDistance,
+                Math.max(efSearch, neighbors.capacity()), 0);
+        for (int i = 0; i < candidates.size(); i++) {
+            neighbors.offer(candidates.distance(i), candidates.index(i));
+        }
+    }
+
+    @Override
+    public int size() {
+        return data.rows();
+    }
+
+    @Override
+    public int dimension() {
+        return data.cols();
+    }
+
+    /**
+     * Mesure le rappel de l'index par rapport à la recherche exhaustive : la
+     * proportion des K vrais plus proches voisins qui sont retrouvés.
+     *
+     * @param queries Les points de requête.
+     * @param k       Le nombre de voisins cherchés.
+     * @return Le rappel moyen, entre 0 et 1.
+     */
+    public double recall(FeatureMatrix queries, int k) {
+        return new BruteForceIndex(data).recallOf(this, queries, k);
+    }
+
+    /**
+     * Insère un point dans le graphe.
+     *
+     * @param node  L'indice de la ligne à insérer.
+     * @param level La couche la plus haute du point.
+     */
+    private void insert(int node, int level) {
+        nodeLevel[node] = level;
+        links[node] = new int[blockOffset(level + 1)];
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        double[] point = data.row(node);
+        int entry = entryPoint;
+        double entryDistance = data.squaredDistance(entry, point);
+
+        // Descente gloutonne dans les couches au-dessus de celle du point
+        for (int l = maxLevel; l > level; l--) {
+            NeighborHeap closest = searchLayer(point, entry, entryDistance, 1, l);
+            entry = closest.index(0);
+            entryDistance = closest.distance(0);
+        }
+
+        // Connexion du point dans chacune de ses couches
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NeighborHeap candidates = searchLayer(point, entry, entryDistance, efConstruction, l);
+            candidates.sort();
+            int[] selected = selectNeighbors(candidates, m);
+            setLinks(node, l, selected, selected.length);
+            for (int neighbor : selected) {
+                addLink(neighbor, node, l);
+            }
+            entry = candidates.index(0);
+            entryDistance = candidates.distance(0);
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Recherche les {@code ef} points les plus proches d'une requête dans une
+     * couche, à partir d'un point d'entrée.
+     *
+     * @return Les points retenus (tas non trié).
+     */
+    private NeighborHeap searchLayer(double[] query, int entry, double entryDistance, int ef, int level) {
+        VisitedSet seen = visited.get();
+        seen.reset();
+        seen.add(entry);
+
+        NeighborHeap results = new NeighborHeap(ef);
+        CandidateQueue candidates = new CandidateQueue();
+        results.offer(entryDistance, entry);
+        candidates.push(entryDistance, entry);
+
+        while (!candidates.isEmpty()) {
+            if (candidates.peekDistance() > results.threshold()) {
+                break; // Plus aucun candidat ne peut améliorer les résultats
+            }
+            int current = candidates.pop();
+            int[] nodeLinks = links[current];
+            int offset = blockOffset(level);
+            int count = nodeLinks[offset];
+            for (int i = 1; i <= count; i++) {
+                int neighbor = nodeLinks[offset + i];
+                if (seen.add(neighbor)) {
+                    double distance = data.squaredDistance(neighbor, query);
+                    if (results.offer(distance, neighbor)) {
+                        candidates.push(distance, neighbor);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Choisit au plus {@code max} voisins parmi des candidats triés par distance
+     * croissante, en écartant ceux qui sont plus proches d'un voisin déjà
+     * choisi que du point lui-même (heuristique de diversité). Les candidats
+     * écartés complètent la liste s'il reste de la place.
+     *
+     * @return Les indices des voisins choisis.
+     */
+    private int[] selectNeighbors(NeighborHeap sortedCandidates, int max) {
+        int[] selected = new int[Math.min(max, sortedCandidates.size())];
+        int[] pruned = new int[sortedCandidates.size()];
+        int selectedCount = 0;
+        int prunedCount = 0;
+        for (int i = 0; i < sortedCandidates.size() && selectedCount < selected.length; i++) {
+            int candidate = sortedCandidates.index(i);
+            double distance = sortedCandidates.distance(i);
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (data.squaredDistance(candidate, selected[j]) < distance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = candidate;
+            } else {
+                pruned[prunedCount++] = candidate;
+            }
+        }
+        for (int i = 0; i < prunedCount && selectedCount < selected.length; i++) {
+            selected[selectedCount++] = pruned[i];
+        }
+        return Arrays.copyOf(selected, selectedCount);
+    }
+
+    /**
+     * Ajoute un lien de {@code node} vers {@code target} dans une couche. Si la
+     * liste est pleine, elle est réduite avec la même heuristique que lors de
+     * l'insertion.
+     */
+    private void addLink(int node, int target, int level) {
+        int[] nodeLinks = links[node];
+        int offset = blockOffset(level);
+        int count = nodeLinks[offset];
+        int max = level == 0 ? maxLinks0 : m;
+        if (count < max) {
+            nodeLinks[offset + 1 + count] = target;
+            nodeLinks[offset] = count + 1;
+            return;
+        }
+
+        NeighborHeap candidates = new NeighborHeap(count + 1);
+        for (int i = 1; i <= count; i++) {
+            int neighbor = nodeLinks[offset + i];
+            candidates.offer(data.squaredDistance(node, neighbor), neighbor);
+        }
+        candidates.offer(data.squaredDistance(node, target), target);
+        candidates.sort();
+        int[] selected = selectNeighbors(candidates, max);
+        setLinks(node, level, selected, selected.length);
+    }
+
+    private void setLinks(int node, int level, int[] neighbors, int count) {
+        int offset = blockOffset(level);
+        links[node][offset] = count;
+        System.arraycopy(neighbors, 0, links[node], offset + 1, count);
+    }
+
+    /**
+     * Position du bloc d'une couche dans le tableau de liens d'un point. Chaque
+     * bloc commence par le nombre de liens, suivi des liens.
+     */
+    private int blockOffset(int level) {
+        return level == 0 ? 0 : (maxLinks0 + 1) + (level - 1) * (m + 1);
+    }
+
+    /**
+     * Ensemble des points visités, remis à zéro en incrémentant une époque
+     * plutôt qu'en effaçant le tableau.
+     */
+    private static final class VisitedSet {
+        private final int[] marks;
+        private int epoch;
+
+        VisitedSet(int size) {
+            this.marks = new int[size];
+        }
+
+        void reset() {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return true si le point n'avait pas encore été visité.
+         */
+        boolean add(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+
+    /**
+     * File de priorité (tas-min) des candidats à explorer, sur tableaux
+     * primitifs.
+     */
+    private static final class CandidateQueue {
+        private double[] distances = new double[64];
+        private int[] nodes = new int[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekDistance() {
+            return distances[0];
+        }
+
+        void push(double distance, int node) {
+            if (size == distances.length) {
+                distances = Arrays.copyOf(distances, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] <= distance) {
+                    break;
+                }
+                distances[i] = distances[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            distances[i] = distance;
+            nodes[i] = node;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            double distance = distances[--size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && distances[child + 1] < distances[child]) {
+                    child++;
+                }
+                if (distances[child] >= distance) {
+                    break;
+                }
+                distances[i] = distances[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            distances[i] = distance;
+            nodes[i] = node;
+            return top;
+        }
+    }
+}
@@ -35,6 +35,28 @@ public class InertieCalculator {
         return totalInertie; // Retourner l'inertie totale
     }
 
+    /**
+     * Calcule l'inertie totale à partir d'une matrice de caractéristiques et de
+     * l'affectation de chaque ligne à un cluster.
+     *
+     * @param data        Les points, une ligne par point.
+     * @param assignments L'indice du cluster de chaque ligne.
+     * @param centroids   Les centroïdes, ligne par ligne (numClusters *
+     *                    dimension).
+     * @return L'inertie totale : la somme des distances au carré entre les points
+     *         et leurs centroïdes respectifs.
+     */
+    public static double calculateInertie(FeatureMatrix data, int[] assignments, double[] centroids) {
+        double totalInertie = 0.0;
+        double[] values = data.data();
+        int dimension = data.cols();
+        for (int p = 0; p < data.rows(); p++) {
+            totalInertie += squaredEuclideanDistance(values, data.offset(p), centroids,
+                    assignments[p] * dimension, dimension);
+        }
+        return totalInertie;
+    }
+
     /**
      * Calcule la distance euclidienne au carré entre deux vecteurs.
      * Cette méthode est utilisée pour éviter de calculer la racine carrée,
@@ -52,4 +74,20 @@ public class InertieCalculator {
         }
         return sum; // Retourner la distance au carré
     }
+
+    /**
+     * Calcule la distance euclidienne au carré entre deux vecteurs stockés dans
+     * des tableaux.
+     *
+     * @param a         Tableau du premier vecteur.
+     * @param aOffset   Indice de début du premier vecteur.
+     * @param b         Tableau du second vecteur.
+     * @param bOffset   Indice de début du second vecteur.
+     * @param dimension La dimension des vecteurs.
+     * @return La distance euclidienne au carré entre les deux points.
+     */
+    private static double squaredEuclideanDistance(double[] a, int aOffset, double[] b, int bOffset,
+            int dimension) {
+        return DistanceKernels.squaredL2(a, aOffset, b, bOffset, dimension);
+    }
 }
@@ -0,0 +1,239 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Arbre k-d pour la recherche exacte des plus proches voisins.
+ *
+ * <p>
+ * Chaque nœud coupe ses points en deux moitiés selon la médiane de la
+ * dimension la plus étalée. L'arbre est stocké dans des tableaux plats : les
+ * feuilles désignent un intervalle de {@code permutation}, qui contient les
+ * indices de lignes réordonnés. Adapté aux descripteurs de faible dimension
+ * (Yang, E34) ; en grande dimension l'élagage devient peu efficace.
+ * </p>
+ */
+public class KDTree implements NeighborIndex {
+
+    static final int LEAF_SIZE = 16; // Nombre maximal de points par feuille
+
+    private final FeatureMatrix data; // Données indexées
+    private final int[] permutation; // Indices de lignes, regroupés par feuille
+    private final int[] nodeStart; // Début de l'intervalle de chaque nœud
+    private final int[] nodeEnd; // Fin (exclue) de l'intervalle de chaque nœud
+    private final int[] nodeDimension; // Dimension de coupe (-1 pour une feuille)
+    private final double[] nodeSplit; // Valeur de coupe
+    private final int[] nodeLeft; // Fils gauche (valeurs <= coupe)
+    private final int[] nodeRight; // Fils droit (valeurs >= coupe)
+    private int nodeCount; // Nombre de nœuds construits
+
+    /**
+     * Construit l'arbre sur les données d'entraînement.
+     *
+     * @param data Les données d'entraînement.
+     */
+    public KDTree(FeatureMatrix data) {
+        this.data = data;
+        int n = data.rows();
+        this.permutation = identity(n);
+        int maxNodes = maxNodes(n);
+        this.nodeStart = new int[maxNodes];
+        this.nodeEnd = new int[maxNodes];
+        this.nodeDimension = new int[maxNodes];
+        this.nodeSplit = new double[maxNodes];
+        this.nodeLeft = new int[maxNodes];
+        this.nodeRight = new int[maxNodes];
+        if (n > 0) {
+            build(0, n);
+        }
+    }
+
+    /**
+     * Construit récursivement le nœud couvrant l'intervalle [start, end).
+     *
+     * @return L'indice du nœud créé.
+     */
+    private int build(int start, int end) {
+        int node = nodeCount++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeDimension[node] = -1;
+        if (end - start <= LEAF_SIZE) {
+            return node;
+        }
+
+        int dimension = widestDimension(data, permutation, start, end);
+        int middle = (start + end) >>> 1;
+        selectNth(data, permutation, start, end, middle, dimension);
+
+        nodeDimension[node] = dimension;
+        nodeSplit[node] = data.get(permutation[middle], dimension);
+        nodeLeft[node] = build(start, middle);
+        nodeRight[node] = build(middle, end);
+        return node;
+    }
+
+    /**
+     * Constructeur utilisé au rechargement d'un modèle : l'arbre est déjà
+     * construit.
+     */
+    private KDTree(FeatureMatrix data, int[] permutation, int[] nodeStart, int[] nodeEnd, int[] nodeDimension,
+            double[] nodeSplit, int[] nodeLeft, int[] nodeRight) {
+        this.data = data;
+        this.permutation = permutation;
+        this.nodeStart = nodeStart;
+        this.nodeEnd = nodeEnd;
+        this.nodeDimension = nodeDimension;
+        this.nodeSplit = nodeSplit;
+        this.nodeLeft = nodeLeft;
+        this.nodeRight = nodeRight;
+        this.nodeCount = nodeStart.length;
+    }
+
+    /**
+     * Écrit l'arbre dans un fichier de modèle (voir {@link KNNModelFile}). Seuls
+     * les nœuds construits sont enregistrés.
+     */
+    void writeTo(KNNModelFile.Output out) throws IOException {
+        KNNModelFile.writeMatrix(data, out);
+        out.writeInts(permutation);
+        out.writeInts(Arrays.copyOf(nodeStart, nodeCount));
+        out.writeInts(Arrays.copyOf(nodeEnd, nodeCount));
+        out.writeInts(Arrays.copyOf(nodeDimension, nodeCount));
+        out.writeDoubles(Arrays.copyOf(nodeSplit, nodeCount));
+        out.writeInts(Arrays.copyOf(nodeLeft, nodeCount));
+        out.writeInts(Arrays.copyOf(nodeRight, nodeCount));
+    }
+
+    /**
+     * Relit un arbre écrit par {@link #writeTo}.
+     */
+    static KDTree readFrom(KNNModelFile.Input in, String[] classNames, int[] labelIds) throws IOException {
+        FeatureMatrix data = KNNModelFile.readMatrix(in, classNames, labelIds);
+        return new KDTree(data, in.readInts(), in.readInts(), in.readInts(), in.readInts(), in.readDoubles(),
+                in.readInts(), in.readInts());
+    }
+
+    @Override
+    public void search(double[] query, NeighborHeap neighbors) {
+        if (nodeCount > 0) {
+            search(0, query, neighbors);
+        }
+    }
+
+    private void search(int node, double[] query, NeighborHeap neighbors) {
+        int dimension = nodeDimension[node];
+        if (dimension < 0) {
+            for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                int row = permutation[i];
+                neighbors.offer(data.squaredDistance(row, query), row);
+            }
+            return;
+        }
+
+        // Descendre d'abord du côté du point, puis de l'autre côté si l'hyperplan
+        // de coupe est plus proche que le K-ième voisin courant
+        double gap = query[dimension] - nodeSplit[node];
+        int near = gap <= 0 ? nodeLeft[node] : nodeRight[node];
+        int far = gap <= 0 ? nodeRight[node] : nodeLeft[node];
+        search(near, query, neighbors);
+        if (gap * gap <= neighbors.threshold()) {
+            search(far, query, neighbors);
+        }
+    }
+
+    @Override
+    public int size() {
+        return data.rows();
+    }
+
+    @Override
+    public int dimension() {
+        return data.cols();
+    }
+
+    /**
+     * Nombre maximal de nœuds d'un arbre binaire dont les feuilles contiennent
+     * au plus {@link #LEAF_SIZE} points.
+     */
+    static int maxNodes(int n) {
+        int leaves = 1;
+        while ((long) leaves * LEAF_SIZE < n) {
+            leaves *= 2;
+        }
+        return 2 * leaves - 1;
+    }
+
+    /**
+     * @return Le tableau {0, 1, ..., n - 1}.
+     */
+    static int[] identity(int n) {
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Retourne la dimension sur laquelle les points de l'intervalle sont le
+     * plus étalés.
+     */
+    static int widestDimension(FeatureMatrix data, int[] permutation, int start, int end) {
+        int bestDimension = 0;
+        double bestSpread = -1;
+        for (int j = 0; j < data.cols(); j++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double value = data.get(permutation[i], j);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                bestDimension = j;
+            }
+        }
+        return bestDimension;
+    }
+
+    /**
+     * Réordonne l'intervalle [start, end) de la permutation de sorte que
+     * l'élément en position {@code nth} soit celui qu'un tri selon la dimension
+     * donnée y placerait, les éléments inférieurs ou égaux avant lui et les
+     * supérieurs ou égaux après (sélection rapide de Hoare).
+     */
+    static void selectNth(FeatureMatrix data, int[] permutation, int start, int end, int nth, int dimension) {
+        int left = start;
+        int right = end - 1;
+        while (left < right) {
+            double pivot = data.get(permutation[(left + right) >>> 1], dimension);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (data.get(permutation[i], dimension) < pivot) {
+                    i++;
+                }
+                while (data.get(permutation[j], dimension) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = permutation[i];
+                    permutation[i] = permutation[j];
+                    permutation[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                right = j;
+            } else if (nth >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+    }
+}
@@ -1,15 +1,119 @@
 package fr.vmiad;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Classe implémentant l'algorithme K-Means.
+ *
+ * <p>
+ * Les calculs sont effectués sur une {@link FeatureMatrix} : les centroïdes
+ * sont stockés ligne par ligne dans un tableau {@code double[]} de taille
+ * {@code numClusters * dimension}.
+ * </p>
+ *
+ * <p>
+ * Chaque itération parcourt les données une seule fois : l'affectation d'un
+ * point ajoute aussitôt ses valeurs à la somme de son cluster. Les lignes sont
+ * découpées en blocs de {@value #CHUNK_ROWS} lignes traités en parallèle,
+ * chacun avec ses propres sommes partielles, fusionnées dans l'ordre des blocs
+ * à la fin de l'itération : le résultat ne dépend pas du nombre de threads.
+ * Les tableaux de travail sont alloués une fois par exécution.
+ * </p>
+ *
+ * <p>
+ * La même passe accumule, pour chaque cluster, Σ‖x − c‖² par rapport au
+ * centroïde c utilisé pour l'affectation. Le nouveau centroïde μ étant la
+ * moyenne des points, l'inertie s'en déduit exactement par
+ * Σ‖x − μ‖² = Σ‖x − c‖² − n‖c − μ‖², sans passe supplémentaire sur les
+ * données (voir {@link KMeansResult}). Les écarts étant mesurés depuis c et
+ * non depuis l'origine, le calcul reste précis pour des données éloignées de
+ * l'origine, d'autant que c et μ sont proches à la dernière itération.
+ * </p>
+ *
+ * <p>
+ * Avec {@link #setNumInit(int)}, plusieurs exécutions indépendantes
+ * (graines distinctes tirées de celle de l'instance) partagent la matrice en
+ * lecture seule et sont lancées en parallèle ; la solution de plus faible
+ * inertie est conservée.
+ * </p>
+ *
+ * <p>
+ * Les variantes {@link Algorithm#ELKAN} et {@link Algorithm#HAMERLY}
+ * conservent des bornes sur les distances de chaque point aux centroïdes et
+ * utilisent l'inégalité triangulaire pour éviter la plupart des calculs de
+ * distance, une fois les premières itérations passées. Elles produisent les
+ * mêmes affectations que l'algorithme de Lloyd.
+ * </p>
  */
 public class KMeans {
 
+    /**
+     * Variante de l'étape d'affectation.
+     */
+    public enum Algorithm {
+        /** Calcul de la distance de chaque point à chaque centroïde. */
+        LLOYD,
+        /**
+         * Une borne inférieure par point et par centroïde, plus les distances
+         * entre centroïdes : le plus d'élagage, mémoire en n * k.
+         */
+        ELKAN,
+        /**
+         * Une seule borne inférieure par point (distance au deuxième centroïde
+         * le plus proche) : moins d'élagage qu'Elkan, mémoire en n. Adapté aux
+         * petites valeurs de k.
+         */
+        HAMERLY
+    }
+
+    /**
+     * Choix des centroïdes initiaux (voir {@link KMeansSeeding}).
+     */
+    public enum Initialization {
+        /** K points distincts tirés au hasard. */
+        RANDOM,
+        /** k-means++ : tirage proportionnel au carré de la distance. */
+        KMEANS_PLUS_PLUS,
+        /** k-means|| : suréchantillonnage parallèle puis k-means++ pondéré. */
+        KMEANS_PARALLEL
+    }
+
+    static final int CHUNK_ROWS = 4096; // Lignes par tâche parallèle
+    static final int ABANDON_MIN_ITERATIONS = 3; // Itérations avant de pouvoir abandonner un redémarrage
+
+    // Marge relative sur les bornes pour absorber les erreurs d'arrondi : un
+    // centroïde à égalité avec le plus proche n'est jamais écarté
+    private static final double BOUND_MARGIN = 1e-9;
+
     private final int numClusters; // Nombre de clusters
     private final int maxIterations; // Nombre maximum d'itérations
-    private List<List<Double>> centroids; // Liste des centroïdes
+    private double[] centroids; // Centroïdes, ligne par ligne
+    private int dimension; // Dimension des données
+    private ExecutorService executor = ForkJoinPool.commonPool(); // Exécution des blocs
+    private double[][] partialSums; // Sommes des points de chaque cluster, par bloc
+    private int[][] partialCounts; // Nombre de points de chaque cluster, par bloc
+    private double[][] partialDeviations; // Σ‖x − c‖² de chaque cluster (c : centroïde d'affectation), par bloc
+    private Algorithm algorithm = Algorithm.LLOYD; // Variante de l'affectation
+    private Initialization initialization = Initialization.KMEANS_PLUS_PLUS; // Choix des centroïdes initiaux
+    private final Random random; // Tirages de l'initialisation
+    private double[] upperBounds; // Majorant de la distance de chaque point à son centroïde
+    private double[] lowerBounds; // Minorants (n * k pour Elkan, n pour Hamerly)
+    private double[] centroidDistances; // Distances entre centroïdes (Elkan)
+    private double[] halfMinDistances; // Moitié de la distance au centroïde le plus proche
+    private double[] shifts; // Déplacement de chaque centroïde à la dernière mise à jour
+    private boolean boundsReady; // Faux tant que les bornes n'ont pas été initialisées
+    private int iterations; // Nombre d'itérations de la dernière exécution
+    private int numInit = 1; // Nombre d'exécutions indépendantes
+    private double abandonRatio = 1.1; // Seuil d'abandon d'un redémarrage, relatif à la meilleure inertie
+    private AtomicLong sharedBestInertia; // Meilleure inertie des redémarrages terminés (bits du double)
     private static final double CONVERGENCE_THRESHOLD = 0.000001; // Seuil de convergence
 
     /**
@@ -19,86 +123,411 @@ public class KMeans {
      * @param maxIterations Nombre maximum d'itérations.
      */
     public KMeans(int numClusters, int maxIterations) {
+        this(numClusters, maxIterations, new Random());
+    }
+
+    /**
+     * Constructeur de KMeans avec une graine, pour des résultats
+     * reproductibles.
+     *
+     * @param numClusters   Nombre de clusters.
+     * @param maxIterations Nombre maximum d'itérations.
+     * @param seed          Graine des tirages de l'initialisation.
+     */
+    public KMeans(int numClusters, int maxIterations, long seed) {
+        this(numClusters, maxIterations, new Random(seed));
+    }
+
+    private KMeans(int numClusters, int maxIterations, Random random) {
         this.numClusters = numClusters;
         this.maxIterations = maxIterations;
-        this.centroids = new ArrayList<>();
+        this.random = random;
+        this.centroids = new double[0];
     }
 
     /**
-     * Initialise les centroïdes aléatoirement en choisissant les points au hasard
-     * dans les données.
+     * Choisit l'exécuteur sur lequel sont répartis les blocs de lignes (pool
+     * fork-join commun par défaut).
+     *
+     * @param executor L'exécuteur à utiliser.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Choisit la variante de l'étape d'affectation (Lloyd par défaut).
+     *
+     * @param algorithm La variante à utiliser.
+     */
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Choisit la méthode d'initialisation des centroïdes (k-means++ par
+     * défaut).
+     *
+     * @param initialization La méthode à utiliser.
+     */
+    public void setInitialization(Initialization initialization) {
+        this.initialization = initialization;
+    }
+
+    /**
+     * Choisit le nombre d'exécutions indépendantes de {@link #fit(FeatureMatrix)}
+     * (1 par défaut). Les exécutions sont lancées en parallèle sur l'exécuteur,
+     * chacune traitant ses blocs de lignes séquentiellement.
+     *
+     * @param numInit Le nombre d'exécutions (au moins 1).
+     */
+    public void setNumInit(int numInit) {
+        if (numInit < 1) {
+            throw new IllegalArgumentException("Nombre d'exécutions invalide : " + numInit);
+        }
+        this.numInit = numInit;
+    }
+
+    /**
+     * Choisit le seuil d'abandon des redémarrages (1.1 par défaut) : après
+     * {@value #ABANDON_MIN_ITERATIONS} itérations, un redémarrage dont
+     * l'inertie dépasse ce multiple de la meilleure inertie déjà obtenue est
+     * arrêté. L'inertie ne faisant que décroître mais pouvant encore baisser,
+     * l'abandon est une heuristique, et le choix final peut alors dépendre de
+     * l'ordre de fin des redémarrages ; {@link Double#POSITIVE_INFINITY}
+     * désactive l'abandon et rend le résultat entièrement reproductible.
+     *
+     * @param abandonRatio Le seuil (au moins 1).
+     */
+    public void setAbandonRatio(double abandonRatio) {
+        if (!(abandonRatio >= 1.0)) {
+            throw new IllegalArgumentException("Seuil d'abandon invalide : " + abandonRatio);
+        }
+        this.abandonRatio = abandonRatio;
+    }
+
+    /**
+     * Initialise les centroïdes en copiant les lignes indiquées.
      *
      * @param data Les données d'entrée.
+     * @param rows Les indices des lignes choisies comme centroïdes initiaux.
      */
-    private void initializeCentroids(List<List<Double>> data) {
-        Collections.shuffle(data);
-        centroids = new ArrayList<>(data.subList(0, numClusters));
+    private void initializeCentroids(FeatureMatrix data, int[] rows) {
+        dimension = data.cols();
+        centroids = new double[numClusters * dimension];
+        for (int c = 0; c < numClusters; c++) {
+            System.arraycopy(data.data(), data.offset(rows[c]), centroids, c * dimension, dimension);
+        }
     }
 
     /**
-     * Calcule la distance euclidienne entre deux vecteurs.
+     * Choisit les lignes servant de centroïdes initiaux selon la méthode
+     * d'initialisation, sans modifier les données.
      *
-     * @param point1 Premier vecteur.
-     * @param point2 Second vecteur.
+     * @param data Les données d'entrée.
+     * @return Les indices des lignes choisies, distincts.
+     * @throws IllegalArgumentException S'il y a moins de lignes que de clusters.
+     */
+    private int[] initialRows(FeatureMatrix data) {
+        if (data.rows() < numClusters) {
+            throw new IllegalArgumentException(
+                    "Moins de points (" + data.rows() + ") que de clusters (" + numClusters + ")");
+        }
+        switch (initialization) {
+            case RANDOM:
+                return KMeansSeeding.randomRows(data, numClusters, random);
+            case KMEANS_PARALLEL:
+                return KMeansSeeding.kMeansParallel(data, numClusters, random, executor);
+            default:
+                return KMeansSeeding.kMeansPlusPlus(data, numClusters, random, executor);
+        }
+    }
+
+    /**
+     * Calcule la distance euclidienne entre deux vecteurs stockés dans des
+     * tableaux.
+     *
+     * @param a       Tableau du premier vecteur.
+     * @param aOffset Indice de début du premier vecteur.
+     * @param b       Tableau du second vecteur.
+     * @param bOffset Indice de début du second vecteur.
      * @return Distance euclidienne.
      */
-    private double euclideanDistance(List<Double> point1, List<Double> point2) {
-        double sum = 0.0;
-        for (int i = 0; i < point1.size(); i++) {
-            double diff = point1.get(i) - point2.get(i);
-            sum += diff * diff;
+    private double euclideanDistance(double[] a, int aOffset, double[] b, int bOffset) {
+        return Math.sqrt(DistanceKernels.squaredL2(a, aOffset, b, bOffset, dimension));
+    }
+
+    /**
+     * Affecte chaque point de données à son centroïde le plus proche et
+     * accumule les sommes de chaque cluster. Les blocs de lignes sont traités
+     * en parallèle, puis leurs sommes partielles sont fusionnées dans le
+     * premier bloc.
+     *
+     * @param data        Les données d'entrée.
+     * @param assignments Tableau recevant l'indice du cluster de chaque point.
+     */
+    private void assignPointsToClusters(FeatureMatrix data, int[] assignments) {
+        if (algorithm != Algorithm.LLOYD) {
+            computeCentroidDistances();
+        }
+        int chunks = partialSums.length;
+        forEachChunk(executor, data.rows(), (chunk, from, to) -> assignChunk(data, assignments, chunk, from, to));
+        boundsReady = true;
+
+        // Fusion des sommes partielles, dans l'ordre des blocs
+        double[] sums = partialSums[0];
+        int[] counts = partialCounts[0];
+        double[] deviations = partialDeviations[0];
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += partialSums[chunk][i];
+            }
+            for (int c = 0; c < numClusters; c++) {
+                counts[c] += partialCounts[chunk][c];
+                deviations[c] += partialDeviations[chunk][c];
+            }
         }
-        return Math.sqrt(sum);
     }
 
     /**
-     * Affecte chaque point de données à son centroïde le plus proche.
+     * Traitement d'un bloc de lignes [from, to).
+     */
+    interface ChunkTask {
+        void run(int chunk, int from, int to);
+    }
+
+    /**
+     * @return Le nombre de blocs de {@value #CHUNK_ROWS} lignes couvrant les
+     *         données (au moins 1).
+     */
+    static int chunkCount(int rows) {
+        return Math.max(1, (rows + CHUNK_ROWS - 1) / CHUNK_ROWS);
+    }
+
+    /**
+     * Exécute une tâche sur chaque bloc de lignes, en parallèle sur
+     * l'exécuteur s'il y a plusieurs blocs, et attend la fin de toutes. Sans
+     * exécuteur (null), les blocs sont traités dans le thread appelant.
      *
-     * @param data Les données d'entrée.
-     * @return Une map contenant les clusters (points associés à chaque centroïde).
+     * @throws IllegalStateException Si une tâche échoue ou si l'attente est
+     *                               interrompue.
      */
-    private Map<Integer, List<List<Double>>> assignPointsToClusters(List<List<Double>> data) {
-        Map<Integer, List<List<Double>>> clusters = new HashMap<>();
-        for (int i = 0; i < numClusters; i++) {
-            clusters.put(i, new ArrayList<>());
+    static void forEachChunk(ExecutorService executor, int rows, ChunkTask task) {
+        int chunks = chunkCount(rows);
+        if (chunks == 1 || executor == null) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                task.run(chunk, chunk * CHUNK_ROWS, Math.min(rows, (chunk + 1) * CHUNK_ROWS));
+            }
+            return;
         }
+        List<Callable<Void>> tasks = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int current = chunk;
+            tasks.add(() -> {
+                task.run(current, current * CHUNK_ROWS, Math.min(rows, (current + 1) * CHUNK_ROWS));
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("K-Means interrompu", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Erreur lors du traitement d'un bloc de lignes", e.getCause());
+        }
+    }
 
-        for (List<Double> point : data) {
-            int closestCentroid = 0;
-            double minDistance = euclideanDistance(point, centroids.get(0));
-            for (int i = 1; i < centroids.size(); i++) {
-                double distance = euclideanDistance(point, centroids.get(i));
-                if (distance < minDistance) {
-                    closestCentroid = i;
-                    minDistance = distance;
+    /**
+     * Affecte les points d'un bloc de lignes et accumule leurs sommes.
+     */
+    private void assignChunk(FeatureMatrix data, int[] assignments, int chunk, int from, int to) {
+        double[] values = data.data();
+        double[] sums = partialSums[chunk];
+        int[] counts = partialCounts[chunk];
+        double[] deviations = partialDeviations[chunk];
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(counts, 0);
+        Arrays.fill(deviations, 0.0);
+        for (int p = from; p < to; p++) {
+            int offset = data.offset(p);
+            int closestCentroid;
+            if (algorithm == Algorithm.LLOYD) {
+                closestCentroid = closestCentroid(values, offset);
+            } else if (!boundsReady) {
+                closestCentroid = initializeBounds(values, offset, p);
+            } else if (algorithm == Algorithm.ELKAN) {
+                closestCentroid = assignElkan(values, offset, p, assignments[p]);
+            } else {
+                closestCentroid = assignHamerly(values, offset, p, assignments[p]);
+            }
+            assignments[p] = closestCentroid;
+
+            int base = closestCentroid * dimension;
+            for (int j = 0; j < dimension; j++) {
+                sums[base + j] += values[offset + j];
+            }
+            counts[closestCentroid]++;
+            deviations[closestCentroid] += DistanceKernels.squaredL2(values, offset, centroids, base, dimension);
+        }
+    }
+
+    /**
+     * Retourne le centroïde le plus proche d'un point en calculant toutes les
+     * distances (le premier en cas d'égalité).
+     */
+    private int closestCentroid(double[] values, int offset) {
+        int closestCentroid = 0;
+        double minDistance = euclideanDistance(values, offset, centroids, 0);
+        for (int i = 1; i < numClusters; i++) {
+            double distance = euclideanDistance(values, offset, centroids, i * dimension);
+            if (distance < minDistance) {
+                closestCentroid = i;
+                minDistance = distance;
+            }
+        }
+        return closestCentroid;
+    }
+
+    /**
+     * Calcule les distances entre centroïdes et, pour chacun, la moitié de la
+     * distance à son plus proche voisin : un point plus proche de son centroïde
+     * que cette moitié ne peut pas changer de cluster.
+     */
+    private void computeCentroidDistances() {
+        Arrays.fill(halfMinDistances, Double.POSITIVE_INFINITY);
+        for (int a = 0; a < numClusters; a++) {
+            for (int b = a + 1; b < numClusters; b++) {
+                double distance = euclideanDistance(centroids, a * dimension, centroids, b * dimension);
+                if (centroidDistances != null) {
+                    centroidDistances[a * numClusters + b] = distance;
+                    centroidDistances[b * numClusters + a] = distance;
                 }
+                halfMinDistances[a] = Math.min(halfMinDistances[a], distance / 2);
+                halfMinDistances[b] = Math.min(halfMinDistances[b], distance / 2);
             }
-            clusters.get(closestCentroid).add(point);
         }
-        return clusters;
     }
 
     /**
-     * Met à jour les centroïdes en fonction des moyennes des points assignés.
-     *
-     * @param clusters Les clusters.
+     * Première affectation d'un point avec bornes : toutes les distances sont
+     * calculées et servent de bornes exactes.
      */
-    private void updateCentroids(Map<Integer, List<List<Double>>> clusters) {
+    private int initializeBounds(double[] values, int offset, int p) {
+        int closestCentroid = 0;
+        double minDistance = Double.POSITIVE_INFINITY;
+        double secondDistance = Double.POSITIVE_INFINITY;
         for (int i = 0; i < numClusters; i++) {
-            List<List<Double>> points = clusters.get(i);
-            if (points.isEmpty())
-                continue;
+            double distance = euclideanDistance(values, offset, centroids, i * dimension);
+            if (algorithm == Algorithm.ELKAN) {
+                lowerBounds[p * numClusters + i] = distance;
+            }
+            if (distance < minDistance) {
+                secondDistance = minDistance;
+                closestCentroid = i;
+                minDistance = distance;
+            } else if (distance < secondDistance) {
+                secondDistance = distance;
+            }
+        }
+        upperBounds[p] = minDistance;
+        if (algorithm == Algorithm.HAMERLY) {
+            lowerBounds[p] = secondDistance;
+        }
+        return closestCentroid;
+    }
 
-            List<Double> newCentroid = new ArrayList<>(Collections.nCopies(points.get(0).size(), 0.0));
-            for (List<Double> point : points) {
-                for (int j = 0; j < point.size(); j++) {
-                    newCentroid.set(j, newCentroid.get(j) + point.get(j));
+    /**
+     * @return true si la borne inférieure dépasse sûrement le majorant.
+     */
+    private static boolean exceeds(double lowerBound, double upperBound) {
+        return lowerBound * (1 - BOUND_MARGIN) > upperBound * (1 + BOUND_MARGIN);
+    }
+
+    /**
+     * Affectation d'un point avec les bornes d'Elkan. Les bornes sont d'abord
+     * corrigées du déplacement des centroïdes à la dernière mise à jour.
+     */
+    private int assignElkan(double[] values, int offset, int p, int current) {
+        int base = p * numClusters;
+        for (int i = 0; i < numClusters; i++) {
+            lowerBounds[base + i] = Math.max(0.0, lowerBounds[base + i] - shifts[i]);
+        }
+        double upper = upperBounds[p] + shifts[current];
+        boolean tight = false;
+
+        if (!exceeds(halfMinDistances[current], upper)) {
+            for (int i = 0; i < numClusters; i++) {
+                if (i == current || exceeds(lowerBounds[base + i], upper)
+                        || exceeds(centroidDistances[current * numClusters + i] / 2, upper)) {
+                    continue;
+                }
+                if (!tight) {
+                    // Majorant rendu exact avant de comparer
+                    upper = euclideanDistance(values, offset, centroids, current * dimension);
+                    lowerBounds[base + current] = upper;
+                    tight = true;
+                    if (exceeds(lowerBounds[base + i], upper)
+                            || exceeds(centroidDistances[current * numClusters + i] / 2, upper)) {
+                        continue;
+                    }
+                }
+                double distance = euclideanDistance(values, offset, centroids, i * dimension);
+                lowerBounds[base + i] = distance;
+                if (distance < upper || (distance == upper && i < current)) {
+                    current = i;
+                    upper = distance;
                 }
             }
-            for (int j = 0; j < newCentroid.size(); j++) {
-                newCentroid.set(j, newCentroid.get(j) / points.size());
+        }
+        upperBounds[p] = upper;
+        return current;
+    }
+
+    /**
+     * Affectation d'un point avec les bornes de Hamerly. Les bornes sont
+     * d'abord corrigées du déplacement des centroïdes à la dernière mise à
+     * jour.
+     */
+    private int assignHamerly(double[] values, int offset, int p, int current) {
+        double largestOtherShift = 0.0;
+        for (int i = 0; i < numClusters; i++) {
+            if (i != current) {
+                largestOtherShift = Math.max(largestOtherShift, shifts[i]);
+            }
+        }
+        double upper = upperBounds[p] + shifts[current];
+        double lower = lowerBounds[p] - largestOtherShift;
+        double bound = Math.max(halfMinDistances[current], lower);
+
+        if (!exceeds(bound, upper)) {
+            upper = euclideanDistance(values, offset, centroids, current * dimension);
+            if (!exceeds(bound, upper)) {
+                // Recalcul complet : plus proche et deuxième plus proche
+                return initializeBounds(values, offset, p);
+            }
+        }
+        upperBounds[p] = upper;
+        lowerBounds[p] = lower;
+        return current;
+    }
+
+    /**
+     * Met à jour les centroïdes avec les moyennes des points assignés, à
+     * partir des sommes accumulées par {@link #assignPointsToClusters}. Un
+     * cluster vide conserve son centroïde précédent.
+     */
+    private void updateCentroids() {
+        double[] sums = partialSums[0];
+        int[] counts = partialCounts[0];
+        for (int i = 0; i < numClusters; i++) {
+            if (counts[i] == 0)
+                continue;
+            for (int j = 0; j < dimension; j++) {
+                centroids[i * dimension + j] = sums[i * dimension + j] / counts[i];
             }
-            centroids.set(i, newCentroid);
         }
     }
 
@@ -109,10 +538,11 @@ public class KMeans {
      * @param newCentroids Les nouveaux centroïdes.
      * @return La somme des distances.
      */
-    private double calculateCentroidShift(List<List<Double>> oldCentroids, List<List<Double>> newCentroids) {
+    private double calculateCentroidShift(double[] oldCentroids, double[] newCentroids) {
         double totalShift = 0.0;
-        for (int i = 0; i < oldCentroids.size(); i++) {
-            totalShift += euclideanDistance(oldCentroids.get(i), newCentroids.get(i));
+        for (int i = 0; i < numClusters; i++) {
+            shifts[i] = euclideanDistance(oldCentroids, i * dimension, newCentroids, i * dimension);
+            totalShift += shifts[i];
         }
         return totalShift;
     }
@@ -124,27 +554,232 @@ public class KMeans {
      * @return Une map contenant les clusters (points associés à chaque centroïde).
      */
     public Map<Integer, List<List<Double>>> fit(List<List<Double>> data) {
-        initializeCentroids(data);
+        FeatureMatrix matrix = FeatureMatrix.fromFeatures(data);
+        int[] assignments = fit(matrix).getLabels();
+
+        Map<Integer, List<List<Double>>> clusters = new HashMap<>();
+        for (int i = 0; i < numClusters; i++) {
+            clusters.put(i, new ArrayList<>());
+        }
+        for (int p = 0; p < assignments.length; p++) {
+            clusters.get(assignments[p]).add(data.get(p));
+        }
+        return clusters;
+    }
+
+    /**
+     * Exécute l'algorithme K-means sur une matrice de caractéristiques. La
+     * matrice n'est pas modifiée.
+     *
+     * @param data Les données d'entrée.
+     * @return Le résultat : affectations, centroïdes, tailles et inerties des
+     *         clusters.
+     */
+    public KMeansResult fit(FeatureMatrix data) {
+        if (numInit > 1) {
+            return fitRestarts(data);
+        }
+        initializeCentroids(data, initialRows(data));
+        return run(data);
+    }
+
+    /**
+     * Lance {@link #numInit} exécutions indépendantes en parallèle et garde
+     * celle de plus faible inertie (la première en cas d'égalité).
+     */
+    private KMeansResult fitRestarts(FeatureMatrix data) {
+        if (data.rows() < numClusters) {
+            throw new IllegalArgumentException(
+                    "Moins de points (" + data.rows() + ") que de clusters (" + numClusters + ")");
+        }
+        AtomicLong best = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+        List<CompletableFuture<KMeansResult>> restarts = new ArrayList<>(numInit);
+        for (int r = 0; r < numInit; r++) {
+            KMeans restart = new KMeans(numClusters, maxIterations, random.nextLong());
+            restart.algorithm = algorithm;
+            restart.initialization = initialization;
+            restart.executor = null; // Le parallélisme vient des redémarrages
+            restart.abandonRatio = abandonRatio;
+            restart.sharedBestInertia = best;
+            restarts.add(CompletableFuture.supplyAsync(() -> {
+                restart.initializeCentroids(data, restart.initialRows(data));
+                KMeansResult result = restart.run(data);
+                if (result != null) {
+                    best.accumulateAndGet(Double.doubleToLongBits(result.getInertia()),
+                            (a, b) -> Double.longBitsToDouble(a) <= Double.longBitsToDouble(b) ? a : b);
+                }
+                return result;
+            }, executor));
+        }
 
-        for (int iter = 0; iter < maxIterations; iter++) {
-            Map<Integer, List<List<Double>>> clusters = assignPointsToClusters(data);
-            List<List<Double>> oldCentroids = new ArrayList<>(centroids);
-            updateCentroids(clusters);
+        KMeansResult bestResult = null;
+        try {
+            for (CompletableFuture<KMeansResult> restart : restarts) {
+                KMeansResult result = restart.join();
+                if (result != null && (bestResult == null || result.getInertia() < bestResult.getInertia())) {
+                    bestResult = result;
+                }
+            }
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Erreur lors d'un redémarrage de K-Means", e.getCause());
+        }
+        // Le redémarrage qui a fixé la meilleure inertie n'est jamais abandonné
+        dimension = data.cols();
+        centroids = bestResult.getCentroids();
+        iterations = bestResult.getIterations();
+        return bestResult;
+    }
+
+    /**
+     * Exécute l'algorithme K-means à partir de centroïdes initiaux donnés, par
+     * exemple la solution d'un K voisin (démarrage à chaud).
+     *
+     * @param data             Les données d'entrée.
+     * @param initialCentroids Les centroïdes initiaux, ligne par ligne (copiés).
+     * @return Le résultat : affectations, centroïdes, tailles et inerties des
+     *         clusters.
+     * @throws IllegalArgumentException Si la taille des centroïdes ne
+     *                                  correspond pas.
+     */
+    public KMeansResult fit(FeatureMatrix data, double[] initialCentroids) {
+        if (initialCentroids.length != numClusters * data.cols()) {
+            throw new IllegalArgumentException("Centroïdes initiaux de taille " + initialCentroids.length
+                    + " au lieu de " + numClusters * data.cols());
+        }
+        dimension = data.cols();
+        centroids = initialCentroids.clone();
+        return run(data);
+    }
+
+    /**
+     * Boucle principale de K-means à partir des centroïdes initialisés. Chaque
+     * itération affecte les points puis remplace les centroïdes par les
+     * moyennes ; les affectations renvoyées sont celles de la dernière
+     * itération, dont les moyennes sont les centroïdes finaux.
+     *
+     * @param data Les données d'entrée.
+     * @return Le résultat de l'exécution, ou null si ce redémarrage a été
+     *         abandonné.
+     */
+    private KMeansResult run(FeatureMatrix data) {
+        int[] assignments = new int[data.rows()];
+        int chunks = chunkCount(data.rows());
+        partialSums = new double[chunks][numClusters * dimension];
+        partialCounts = new int[chunks][numClusters];
+        partialDeviations = new double[chunks][numClusters];
+        double[] oldCentroids = new double[centroids.length];
+        shifts = new double[numClusters];
+        boundsReady = false;
+        if (algorithm != Algorithm.LLOYD) {
+            upperBounds = new double[data.rows()];
+            lowerBounds = new double[algorithm == Algorithm.ELKAN ? data.rows() * numClusters : data.rows()];
+            centroidDistances = algorithm == Algorithm.ELKAN ? new double[numClusters * numClusters] : null;
+            halfMinDistances = new double[numClusters];
+        }
+
+        iterations = 0;
+        boolean abandoned = false;
+        for (int iter = 0; iter < Math.max(1, maxIterations); iter++) {
+            iterations++;
+            assignPointsToClusters(data, assignments);
+            System.arraycopy(centroids, 0, oldCentroids, 0, centroids.length);
+            updateCentroids();
 
             // Calcul de la somme des distances entre les anciens et nouveaux centroïdes
             double shift = calculateCentroidShift(oldCentroids, centroids);
 
-            // Vérifier si la convergence est atteinte
+            // Vérifier si la convergence est atteinte (nombre d'itérations
+            // rapporté par KMeansResult#getIterations)
             if (shift < CONVERGENCE_THRESHOLD) {
-                System.out.println("Convergence atteinte après " + (iter + 1) + " itérations.");
                 break;
             }
+            if (shouldAbandon(oldCentroids)) {
+                abandoned = true;
+                break;
+            }
+        }
+
+        KMeansResult result = abandoned ? null
+                : new KMeansResult(assignments, centroids, partialCounts[0], clusterInertia(oldCentroids), iterations);
+        partialSums = null;
+        partialCounts = null;
+        partialDeviations = null;
+        upperBounds = null;
+        lowerBounds = null;
+        centroidDistances = null;
+        return result;
+    }
+
+    /**
+     * Compare l'inertie de l'itération, déduite des écarts accumulés pendant
+     * l'affectation (voir {@link #clusterInertia(double[])}), à celle du
+     * meilleur redémarrage.
+     *
+     * @param oldCentroids Les centroïdes utilisés pour l'affectation.
+     * @return true si ce redémarrage est nettement moins bon que le meilleur
+     *         redémarrage déjà terminé.
+     */
+    private boolean shouldAbandon(double[] oldCentroids) {
+        if (sharedBestInertia == null || iterations < ABANDON_MIN_ITERATIONS) {
+            return false;
+        }
+        double best = Double.longBitsToDouble(sharedBestInertia.get());
+        if (best == Double.POSITIVE_INFINITY) {
+            return false;
         }
+        double inertia = 0.0;
+        for (double value : clusterInertia(oldCentroids)) {
+            inertia += value;
+        }
+        return inertia > best * abandonRatio;
+    }
 
-        return assignPointsToClusters(data);
+    /**
+     * Inertie de chaque cluster après la mise à jour des centroïdes, déduite
+     * des écarts accumulés pendant l'affectation :
+     * Σ‖x − μ‖² = Σ‖x − c‖² − n‖c − μ‖².
+     *
+     * @param oldCentroids Les centroïdes c utilisés pour l'affectation.
+     */
+    private double[] clusterInertia(double[] oldCentroids) {
+        int[] counts = partialCounts[0];
+        double[] inertia = partialDeviations[0].clone();
+        for (int c = 0; c < numClusters; c++) {
+            if (counts[c] > 0) {
+                int base = c * dimension;
+                inertia[c] -= counts[c] * DistanceKernels.squaredL2(oldCentroids, base, centroids, base, dimension);
+            }
+        }
+        return inertia;
     }
 
     public List<List<Double>> getCentroids() {
+        List<List<Double>> result = new ArrayList<>();
+        for (int i = 0; i < numClusters && dimension > 0; i++) {
+            List<Double> centroid = new ArrayList<>(dimension);
+            for (int j = 0; j < dimension; j++) {
+                centroid.add(centroids[i * dimension + j]);
+            }
+            result.add(centroid);
+        }
+        return result;
+    }
+
+    /**
+     * @return Le nombre d'itérations effectuées par le dernier appel à
+     *         {@code fit}.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Retourne les centroïdes sous forme de tableau, ligne par ligne.
+     *
+     * @return Les centroïdes (tableau non copié, de taille numClusters *
+     *         dimension).
+     */
+    public double[] getCentroidArray() {
         return centroids;
     }
 }
@@ -0,0 +1,86 @@
+package fr.vmiad;
+
+/**
+ * Résultat d'une exécution de {@link KMeans} : affectations, centroïdes,
+ * taille et inertie de chaque cluster, nombre d'itérations.
+ *
+ * <p>
+ * Tout est accumulé pendant la dernière passe d'affectation : chaque centroïde
+ * est la moyenne des points qui lui sont affectés, et l'inertie est la somme
+ * des distances au carré de ces points à ce centroïde, déduite des écarts au
+ * centroïde d'affectation (voir {@link KMeans}). Les tableaux ne sont pas
+ * copiés.
+ * </p>
+ */
+public class KMeansResult {
+
+    private final int[] labels; // Cluster de chaque ligne
+    private final double[] centroids; // Centroïdes, ligne par ligne
+    private final int[] clusterSizes; // Nombre de points de chaque cluster
+    private final double[] clusterInertia; // Inertie de chaque cluster
+    private final double inertia; // Inertie totale
+    private final int iterations; // Nombre d'itérations effectuées
+
+    KMeansResult(int[] labels, double[] centroids, int[] clusterSizes, double[] clusterInertia, int iterations) {
+        this.labels = labels;
+        this.centroids = centroids;
+        this.clusterSizes = clusterSizes;
+        this.clusterInertia = clusterInertia;
+        this.iterations = iterations;
+        double total = 0.0;
+        for (double value : clusterInertia) {
+            total += value;
+        }
+        this.inertia = total;
+    }
+
+    /**
+     * @return L'indice du cluster de chaque ligne de la matrice.
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return Les centroïdes, ligne par ligne (numClusters * dimension).
+     */
+    public double[] getCentroids() {
+        return centroids;
+    }
+
+    /**
+     * @return Le nombre de points de chaque cluster.
+     */
+    public int[] getClusterSizes() {
+        return clusterSizes;
+    }
+
+    /**
+     * @return L'inertie de chaque cluster (somme des distances au carré de ses
+     *         points à son centroïde).
+     */
+    public double[] getClusterInertia() {
+        return clusterInertia;
+    }
+
+    /**
+     * @return L'inertie totale.
+     */
+    public double getInertia() {
+        return inertia;
+    }
+
+    /**
+     * @return Le nombre d'itérations effectuées.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return Le nombre de clusters.
+     */
+    public int getNumClusters() {
+        return clusterSizes.length;
+    }
+}
@@ -0,0 +1,262 @@
+package fr.vmiad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Choix des centroïdes initiaux de {@link KMeans}. Les méthodes renvoient des
+ * indices de lignes distincts et ne modifient jamais les données.
+ *
+ * <ul>
+ * <li>k-means++ (Arthur et Vassilvitskii) : chaque nouveau centre est tiré
+ * avec une probabilité proportionnelle au carré de la distance au centre déjà
+ * choisi le plus proche ;</li>
+ * <li>k-means|| (Bahmani et al.) : quelques tours de suréchantillonnage, où
+ * chaque point est retenu indépendamment des autres, ce qui se parallélise ;
+ * les candidats, pondérés par le nombre de points qu'ils représentent, sont
+ * ensuite réduits à K centres par k-means++.</li>
+ * </ul>
+ * <p>
+ * Les calculs de distances sont répartis par blocs de lignes comme dans
+ * {@link KMeans}. Le tirage ne dépend que de la graine, pas du nombre de
+ * threads.
+ * </p>
+ */
+final class KMeansSeeding {
+
+    static final int PARALLEL_ROUNDS = 5; // Tours de suréchantillonnage de k-means||
+    static final double OVERSAMPLING = 2.0; // Candidats attendus par tour, en multiples de K
+
+    private KMeansSeeding() {
+    }
+
+    /**
+     * Tire K lignes distinctes au hasard.
+     */
+    static int[] randomRows(FeatureMatrix data, int k, Random random) {
+        int[] rows = KDTree.identity(data.rows());
+        for (int c = 0; c < k; c++) {
+            int other = c + random.nextInt(rows.length - c);
+            int swap = rows[c];
+            rows[c] = rows[other];
+            rows[other] = swap;
+        }
+        return Arrays.copyOf(rows, k);
+    }
+
+    /**
+     * Initialisation k-means++.
+     */
+    static int[] kMeansPlusPlus(FeatureMatrix data, int k, Random random, ExecutorService executor) {
+        int n = data.rows();
+        double[] minDistances = new double[n];
+        Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+        boolean[] chosen = new boolean[n];
+        int[] rows = new int[k];
+
+        rows[0] = random.nextInt(n);
+        chosen[rows[0]] = true;
+        for (int c = 1; c < k; c++) {
+            updateMinDistances(data, rows[c - 1], minDistances, executor);
+            rows[c] = sample(minDistances, null, chosen, random);
+            chosen[rows[c]] = true;
+        }
+        return rows;
+    }
+
+    /**
+     * Initialisation k-means||.
+     */
+    static int[] kMeansParallel(FeatureMatrix data, int k, Random random, ExecutorService executor) {
+        int n = data.rows();
+        double[] minDistances = new double[n];
+        Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+        boolean[] candidate = new boolean[n];
+        List<Integer> candidates = new ArrayList<>();
+
+        int first = random.nextInt(n);
+        candidate[first] = true;
+        candidates.add(first);
+        List<Integer> added = new ArrayList<>(candidates);
+        for (int round = 0; round < PARALLEL_ROUNDS; round++) {
+            for (int row : added) {
+                updateMinDistances(data, row, minDistances, executor);
+            }
+            double cost = 0.0;
+            for (double distance : minDistances) {
+                cost += distance;
+            }
+            if (cost == 0.0) {
+                break; // Tous les points coïncident avec un candidat
+            }
+
+            // Chaque point est retenu indépendamment, avec un tirage propre
+            // dépendant seulement de la graine du tour et de la ligne
+            long roundSeed = random.nextLong();
+            double factor = OVERSAMPLING * k / cost;
+            boolean[] selected = new boolean[n];
+            KMeans.forEachChunk(executor, n, (chunk, from, to) -> {
+                for (int p = from; p < to; p++) {
+                    selected[p] = !candidate[p] && uniform(roundSeed, p) < factor * minDistances[p];
+                }
+            });
+            added = new ArrayList<>();
+            for (int p = 0; p < n; p++) {
+                if (selected[p]) {
+                    candidate[p] = true;
+                    candidates.add(p);
+                    added.add(p);
+                }
+            }
+        }
+
+        // Moins de candidats que de clusters : compléter au hasard
+        if (candidates.size() < k) {
+            for (int p : randomRows(data, n, random)) {
+                if (candidates.size() >= k) {
+                    break;
+                }
+                if (!candidate[p]) {
+                    candidate[p] = true;
+                    candidates.add(p);
+                }
+            }
+        }
+
+        // Poids de chaque candidat : nombre de points dont il est le plus proche
+        int[] candidateRows = candidates.stream().mapToInt(Integer::intValue).toArray();
+        FeatureMatrix candidateMatrix = rowsOf(data, candidateRows);
+        int chunks = KMeans.chunkCount(n);
+        double[][] partialWeights = new double[chunks][candidateRows.length];
+        KMeans.forEachChunk(executor, n, (chunk, from, to) -> {
+            for (int p = from; p < to; p++) {
+                int closest = 0;
+                double best = Double.POSITIVE_INFINITY;
+                for (int c = 0; c < candidateRows.length; c++) {
+                    double distance = DistanceKernels.squaredL2(data.data(), data.offset(p), candidateMatrix.data(),
+                            candidateMatrix.offset(c), data.cols());
+                    if (distance < best) {
+                        best = distance;
+                        closest = c;
+                    }
+                }
+                partialWeights[chunk][closest]++;
+            }
+        });
+        double[] weights = new double[candidateRows.length];
+        for (double[] partial : partialWeights) {
+            for (int c = 0; c < weights.length; c++) {
+                weights[c] += partial[c];
+            }
+        }
+
+        // k-means++ pondéré sur les candidats
+        double[] candidateDistances = new double[candidateRows.length];
+        Arrays.fill(candidateDistances, Double.POSITIVE_INFINITY);
+        boolean[] chosen = new boolean[candidateRows.length];
+        int[] picked = new int[k];
+        picked[0] = sample(weights, null, chosen, random);
+        chosen[picked[0]] = true;
+        for (int c = 1; c < k; c++) {
+            updateMinDistances(candidateMatrix, picked[c - 1], candidateDistances, executor);
+            picked[c] = sample(candidateDistances, weights, chosen, random);
+            chosen[picked[c]] = true;
+        }
+
+        int[] rows = new int[k];
+        for (int c = 0; c < k; c++) {
+            rows[c] = candidateRows[picked[c]];
+        }
+        return rows;
+    }
+
+    /**
+     * Met à jour la distance (au carré) de chaque ligne au centre le plus
+     * proche après l'ajout d'un centre.
+     */
+    private static void updateMinDistances(FeatureMatrix data, int center, double[] minDistances,
+            ExecutorService executor) {
+        KMeans.forEachChunk(executor, data.rows(), (chunk, from, to) -> {
+            for (int p = from; p < to; p++) {
+                double distance = data.squaredDistance(p, center);
+                if (distance < minDistances[p]) {
+                    minDistances[p] = distance;
+                }
+            }
+        });
+    }
+
+    /**
+     * Tire une ligne non encore choisie avec une probabilité proportionnelle à
+     * sa distance (multipliée par son poids s'il y en a). Si toutes les lignes
+     * restantes sont à distance nulle, tire uniformément parmi elles.
+     */
+    private static int sample(double[] distances, double[] weights, boolean[] chosen, Random random) {
+        double total = 0.0;
+        for (int p = 0; p < distances.length; p++) {
+            if (!chosen[p]) {
+                total += weights == null ? distances[p] : distances[p] * weights[p];
+            }
+        }
+        if (total > 0.0 && total < Double.POSITIVE_INFINITY) {
+            double target = random.nextDouble() * total;
+            int last = -1;
+            for (int p = 0; p < distances.length; p++) {
+                if (chosen[p]) {
+                    continue;
+                }
+                double mass = weights == null ? distances[p] : distances[p] * weights[p];
+                if (mass > 0) {
+                    last = p;
+                    target -= mass;
+                    if (target < 0) {
+                        return p;
+                    }
+                }
+            }
+            return last; // Arrondi : la dernière ligne de masse positive
+        }
+
+        int remaining = 0;
+        for (boolean c : chosen) {
+            if (!c) {
+                remaining++;
+            }
+        }
+        int target = random.nextInt(remaining);
+        for (int p = 0; p < chosen.length; p++) {
+            if (!chosen[p] && target-- == 0) {
+                return p;
+            }
+        }
+        throw new IllegalStateException("Plus de lignes disponibles");
+    }
+
+    /**
+     * Copie des lignes choisies dans une nouvelle matrice.
+     */
+    private static FeatureMatrix rowsOf(FeatureMatrix data, int[] rows) {
+        int cols = data.cols();
+        double[] values = new double[rows.length * cols];
+        for (int i = 0; i < rows.length; i++) {
+            System.arraycopy(data.data(), data.offset(rows[i]), values, i * cols, cols);
+        }
+        return new FeatureMatrix(rows.length, cols, values, new String[rows.length], new int[rows.length],
+                new String[] { null });
+    }
+
+    /**
+     * Nombre pseudo-aléatoire uniforme dans [0, 1) ne dépendant que de la
+     * graine et de l'indice (mélange SplitMix64).
+     */
+    static double uniform(long seed, int index) {
+        long z = seed + (index + 1L) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+}
@@ -1,15 +1,50 @@
 package fr.vmiad;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Classe implémentant l'algorithme K-Nearest Neighbors (KNN).
+ *
+ * <p>
+ * Les données d'entraînement sont conservées dans une {@link FeatureMatrix}
+ * afin que le calcul des distances parcoure un tableau contigu de doubles. La
+ * recherche des voisins est déléguée à un {@link NeighborIndex} : parcours
+ * exhaustif par défaut, arbre k-d / arbre de boules au choix, ou graphe HNSW
+ * pour une recherche approchée.
+ * </p>
  */
 public class KNN {
 
+    /**
+     * Structure utilisée pour rechercher les voisins.
+     */
+    public enum IndexType {
+        /** Parcours exhaustif des données d'entraînement. */
+        BRUTE_FORCE,
+        /** Arbre k-d, pour les descripteurs de faible dimension. */
+        KD_TREE,
+        /** Arbre de boules, pour les descripteurs de grande dimension. */
+        BALL_TREE,
+        /**
+         * Graphe HNSW avec ses paramètres par défaut : recherche approchée, voir
+         * {@link HNSWIndex}.
+         */
+        HNSW
+    }
+
+    private static final int BATCH_CHUNK = 64; // Requêtes par tâche en mode lot
+
     private final int k; // Nombre de voisins à considérer
-    private final List<DescriptorWithLabel> trainingData; // Données d'entraînement
+    private final String[] classNames; // Dictionnaire des classes
+    private final int[] labelIds; // Indice de classe de chaque point d'entraînement
+    private final NeighborIndex index; // Structure de recherche des voisins
+    private volatile PredictionCache cache; // Cache des prédictions (null : désactivé)
+    private volatile long cacheVersion; // Version des réglages de l'index lors du remplissage du cache
 
     /**
      * Constructeur de la classe KNN.
@@ -18,24 +53,183 @@ public class KNN {
      * @param trainingData Les données d'entraînement (features + labels).
      */
     public KNN(int k, List<DescriptorWithLabel> trainingData) {
+        this(k, FeatureMatrix.fromDescriptors(trainingData));
+    }
+
+    /**
+     * Constructeur de la classe KNN avec le choix de la structure de recherche.
+     *
+     * @param k            Le nombre de voisins à considérer.
+     * @param trainingData Les données d'entraînement (features + labels).
+     * @param indexType    La structure de recherche à construire.
+     */
+    public KNN(int k, List<DescriptorWithLabel> trainingData, IndexType indexType) {
+        this(k, FeatureMatrix.fromDescriptors(trainingData), indexType);
+    }
+
+    /**
+     * Constructeur de la classe KNN à partir d'une matrice de caractéristiques.
+     *
+     * @param k            Le nombre de voisins à considérer.
+     * @param trainingData Les données d'entraînement (features + labels).
+     */
+    public KNN(int k, FeatureMatrix trainingData) {
+        this(k, trainingData, IndexType.BRUTE_FORCE);
+    }
+
+    /**
+     * Constructeur de la classe KNN à partir d'une matrice de caractéristiques,
+     * avec le choix de la structure de recherche. L'index est construit une
+     * seule fois ici.
+     *
+     * @param k            Le nombre de voisins à considérer.
+     * @param trainingData Les données d'entraînement (features + labels).
+     * @param indexType    La structure de recherche à construire.
+     */
+    public KNN(int k, FeatureMatrix trainingData, IndexType indexType) {
+        this(k, trainingData, buildIndex(trainingData, indexType));
+    }
+
+    /**
+     * Constructeur de la classe KNN avec une autre distance que la distance
+     * euclidienne. La recherche est exhaustive (avec abandon anticipé et, pour
+     * L2 et L1, élagage par la norme).
+     *
+     * @param k            Le nombre de voisins à considérer.
+     * @param trainingData Les données d'entraînement (features + labels).
+     * @param metric       La distance utilisée pour comparer les points.
+     */
+    public KNN(int k, FeatureMatrix trainingData, DistanceMetric metric) {
+        this(k, trainingData, new BruteForceIndex(trainingData, metric));
+    }
+
+    /**
+     * Constructeur de la classe KNN avec un index déjà construit sur les données
+     * d'entraînement. Seuls les labels de la matrice sont conservés.
+     *
+     * @param k            Le nombre de voisins à considérer.
+     * @param trainingData Les données d'entraînement (pour les labels).
+     * @param index        L'index construit sur ces mêmes données.
+     */
+    public KNN(int k, FeatureMatrix trainingData, NeighborIndex index) {
         this.k = k;
-        this.trainingData = trainingData;
+        this.classNames = trainingData.classNames();
+        this.labelIds = trainingData.labelIds();
+        this.index = index;
+    }
+
+    /**
+     * Constructeur utilisé au rechargement d'un modèle (voir
+     * {@link KNNModelFile}).
+     */
+    KNN(int k, String[] classNames, int[] labelIds, NeighborIndex index) {
+        this.k = k;
+        this.classNames = classNames;
+        this.labelIds = labelIds;
+        this.index = index;
+    }
+
+    int k() {
+        return k;
+    }
+
+    String[] classNames() {
+        return classNames;
+    }
+
+    int[] labelIds() {
+        return labelIds;
+    }
+
+    NeighborIndex index() {
+        return index;
+    }
+
+    /**
+     * Construit la structure de recherche demandée.
+     *
+     * @param trainingData Les données d'entraînement.
+     * @param indexType    Le type de structure.
+     * @return L'index construit.
+     */
+    private static NeighborIndex buildIndex(FeatureMatrix trainingData, IndexType indexType) {
+        switch (indexType) {
+            case KD_TREE:
+                return new KDTree(trainingData);
+            case BALL_TREE:
+                return new BallTree(trainingData);
+            case HNSW:
+                return new HNSWIndex(trainingData);
+            default:
+                return new BruteForceIndex(trainingData);
+        }
+    }
+
+    /**
+     * Recherche les K plus proches voisins d'un point.
+     *
+     * @param features Les caractéristiques du point.
+     * @return Les voisins retenus, triés du plus proche au plus éloigné.
+     */
+    NeighborHeap search(double[] features) {
+        NeighborHeap heap = new NeighborHeap(Math.min(k, index.size()));
+        index.search(features, heap);
+        heap.sort();
+        return heap;
     }
 
     /**
-     * Calcule la distance euclidienne entre deux vecteurs de caractéristiques.
+     * Place un cache devant {@link #predict(double[])} et
+     * {@link #predictWithScores(double[])}. Les données d'entraînement d'un
+     * KNN ne changent pas, mais un réglage de l'index peut changer ses
+     * résultats (par exemple {@link HNSWIndex#setEfSearch(int)}) : le cache
+     * est alors vidé à la requête suivante (voir
+     * {@link NeighborIndex#searchVersion()}).
      *
-     * @param features1 Les caractéristiques du premier point.
-     * @param features2 Les caractéristiques du second point.
-     * @return La distance euclidienne entre les deux points.
+     * @param cache Le cache à utiliser (null pour le désactiver).
      */
-    private double euclideanDistance(List<Double> features1, List<Double> features2) {
-        double sum = 0.0;
-        for (int i = 0; i < features1.size(); i++) {
-            double diff = features1.get(i) - features2.get(i);
-            sum += diff * diff;
+    public void setCache(PredictionCache cache) {
+        this.cacheVersion = index.searchVersion();
+        this.cache = cache;
+    }
+
+    /**
+     * @return Le cache des prédictions, ou null s'il est désactivé.
+     */
+    public PredictionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Compte les labels des K plus proches voisins d'un point, en passant par
+     * le cache s'il est activé.
+     */
+    private Map<String, Integer> labelCounts(double[] features) {
+        PredictionCache current = cache;
+        if (current == null) {
+            return countLabels(search(features));
+        }
+        long version = index.searchVersion();
+        if (version != cacheVersion) {
+            // Résultats calculés avec d'autres réglages de l'index
+            cacheVersion = version;
+            current.invalidate();
         }
-        return Math.sqrt(sum);
+        return current.labelCounts(features, f -> countLabels(search(f)));
+    }
+
+    /**
+     * Compte le nombre d'occurrences de chaque label parmi les voisins.
+     *
+     * @param neighbors Les voisins retenus.
+     * @return Le nombre de voisins pour chaque label.
+     */
+    private Map<String, Integer> countLabels(NeighborHeap neighbors) {
+        Map<String, Integer> labelCounts = new HashMap<>();
+        for (int i = 0; i < neighbors.size(); i++) {
+            labelCounts.merge(classNames[labelIds[neighbors.index(i)]], 1, Integer::sum);
+        }
+        return labelCounts;
     }
 
     /**
@@ -45,22 +239,154 @@ public class KNN {
      * @return Le label prédit.
      */
     public String predict(List<Double> features) {
-        // Calculer les distances entre le point cible et chaque point d'entraînement
-        List<Neighbor> neighbors = trainingData.stream()
-                .map(data -> new Neighbor(data.getLabel(), euclideanDistance(features, data.getFeatures())))
-                .sorted(Comparator.comparingDouble(Neighbor::getDistance)) // Trier par distance
-                .limit(k) // Garder les K plus proches voisins
-                .collect(Collectors.toList());
+        return predict(FeatureMatrix.toArray(features));
+    }
+
+    /**
+     * Prédit le label pour un nouveau point donné ses caractéristiques.
+     *
+     * @param features Les caractéristiques du point à prédire.
+     * @return Le label prédit.
+     */
+    public String predict(double[] features) {
+        // Compter les labels parmi les K plus proches voisins
+        Map<String, Integer> labelCounts = labelCounts(features);
 
         // Trouver le label majoritaire parmi les K voisins
-        return neighbors.stream()
-                .collect(Collectors.groupingBy(Neighbor::getLabel, Collectors.counting())) // Compter les labels
-                .entrySet().stream()
-                .max(Comparator.comparingLong(Map.Entry::getValue)) // Trouver le label majoritaire
+        return majorityLabel(labelCounts);
+    }
+
+    /**
+     * Retourne le label le plus représenté.
+     *
+     * @param labelCounts Le nombre de voisins pour chaque label.
+     * @return Le label majoritaire.
+     */
+    static String majorityLabel(Map<String, Integer> labelCounts) {
+        return labelCounts.entrySet().stream()
+                .max(Comparator.comparingInt(Map.Entry::getValue))
                 .get()
                 .getKey();
     }
 
+    /**
+     * Prédit les labels et les scores d'un lot de points en parallèle, sur le
+     * pool fork-join commun.
+     *
+     * @param queries Les caractéristiques des points à prédire, une ligne par
+     *                point.
+     * @return Les labels et scores prédits, dans l'ordre des lignes.
+     */
+    public BatchPrediction predictBatch(FeatureMatrix queries) {
+        return predictBatch(queries, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Prédit les labels et les scores d'un lot de points en parallèle. Les
+     * requêtes sont découpées en tâches de {@value #BATCH_CHUNK} points
+     * soumises à l'exécuteur fourni. Chaque requête donne le même label que
+     * {@link #predict(double[])}.
+     *
+     * @param queries  Les caractéristiques des points à prédire, une ligne par
+     *                 point.
+     * @param executor L'exécuteur sur lequel répartir les tâches.
+     * @return Les labels et scores prédits, dans l'ordre des lignes.
+     * @throws IllegalStateException Si une tâche échoue ou si l'attente est
+     *                               interrompue.
+     */
+    public BatchPrediction predictBatch(FeatureMatrix queries, ExecutorService executor) {
+        int numQueries = queries.rows();
+        int numClasses = classNames.length;
+        int[] predicted = new int[numQueries];
+        double[] scores = new double[numQueries];
+        double[] classScores = new double[numQueries * numClasses];
+
+        Map<String, Integer> classIndex = new HashMap<>();
+        for (int c = 0; c < numClasses; c++) {
+            classIndex.put(classNames[c], c);
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < numQueries; start += BATCH_CHUNK) {
+            int from = start;
+            int to = Math.min(start + BATCH_CHUNK, numQueries);
+            tasks.add(() -> {
+                NeighborHeap[] heaps = searchAll(queries, from, to);
+                for (int q = from; q < to; q++) {
+                    Map<String, Integer> labelCounts = countLabels(heaps[q - from]);
+                    for (Map.Entry<String, Integer> entry : labelCounts.entrySet()) {
+                        classScores[q * numClasses + classIndex.get(entry.getKey())] = entry.getValue()
+                                / (double) k;
+                    }
+                    predicted[q] = classIndex.get(majorityLabel(labelCounts));
+                    scores[q] = classScores[q * numClasses + predicted[q]];
+                }
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Prédiction par lots interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Erreur lors de la prédiction par lots", e.getCause());
+        }
+        return new BatchPrediction(classNames, predicted, scores, classScores);
+    }
+
+    /**
+     * Mesure la proportion de points pour lesquels ce modèle prédit le même
+     * label qu'un modèle de référence, par exemple un modèle approché ou
+     * compressé comparé au modèle exact.
+     *
+     * @param reference Le modèle de référence.
+     * @param queries   Les points à prédire.
+     * @return La proportion de labels identiques, entre 0 et 1.
+     */
+    public double agreementWith(KNN reference, FeatureMatrix queries) {
+        if (queries.rows() == 0) {
+            return 1.0;
+        }
+        BatchPrediction mine = predictBatch(queries);
+        BatchPrediction theirs = reference.predictBatch(queries);
+        int same = 0;
+        for (int q = 0; q < queries.rows(); q++) {
+            if (mine.getLabel(q).equals(theirs.getLabel(q))) {
+                same++;
+            }
+        }
+        return same / (double) queries.rows();
+    }
+
+    /**
+     * Recherche les voisins d'un intervalle de requêtes. La recherche
+     * exhaustive est faite par blocs ; les autres index sont interrogés requête
+     * par requête.
+     *
+     * @return Un tas trié par requête, indexé à partir de {@code from}.
+     */
+    private NeighborHeap[] searchAll(FeatureMatrix queries, int from, int to) {
+        NeighborHeap[] heaps = new NeighborHeap[to - from];
+        for (int q = from; q < to; q++) {
+            heaps[q - from] = new NeighborHeap(Math.min(k, index.size()));
+        }
+        if (index instanceof BruteForceIndex) {
+            ((BruteForceIndex) index).searchTiled(queries, from, to, heaps);
+        } else {
+            for (int q = from; q < to; q++) {
+                index.search(queries.row(q), heaps[q - from]);
+            }
+        }
+        for (NeighborHeap heap : heaps) {
+            heap.sort();
+        }
+        return heaps;
+    }
+
     // Methode pour la courbe Précision/Rappel
     /**
      * Prédit les scores pour chaque classe pour un nouveau point donné ses
@@ -70,18 +396,19 @@ public class KNN {
      * @return Un map des scores pour chaque classe.
      */
     public Map<String, Double> predictWithScores(List<Double> features) {
-        // Calculer les distances entre le point cible et chaque point d'entraînement
-        List<Neighbor> neighbors = trainingData.stream()
-                .map(data -> new Neighbor(data.getLabel(), euclideanDistance(features, data.getFeatures())))
-                .sorted(Comparator.comparingDouble(Neighbor::getDistance)) // Trier par distance
-                .limit(k) // Garder les K plus proches voisins
-                .collect(Collectors.toList());
+        return predictWithScores(FeatureMatrix.toArray(features));
+    }
 
+    /**
+     * Prédit les scores pour chaque classe pour un nouveau point donné ses
+     * caractéristiques.
+     *
+     * @param features Les caractéristiques du point à prédire.
+     * @return Un map des scores pour chaque classe.
+     */
+    public Map<String, Double> predictWithScores(double[] features) {
         // Compter le nombre d'occurrences de chaque label parmi les K voisins
-        Map<String, Integer> labelCounts = new HashMap<>();
-        for (Neighbor neighbor : neighbors) {
-            labelCounts.put(neighbor.getLabel(), labelCounts.getOrDefault(neighbor.getLabel(), 0) + 1);
-        }
+        Map<String, Integer> labelCounts = labelCounts(features);
 
         // Calculer le score de chaque label (proportion de voisins pour chaque label)
         Map<String, Double> classScores = new HashMap<>();
@@ -91,25 +418,4 @@ public class KNN {
 
         return classScores;
     }
-
-    /**
-     * Classe interne pour représenter un voisin avec son label et sa distance.
-     */
-    private static class Neighbor {
-        private final String label;
-        private final double distance;
-
-        public Neighbor(String label, double distance) {
-            this.label = label;
-            this.distance = distance;
-        }
-
-        public String getLabel() {
-            return label;
-        }
-
-        public double getDistance() {
-            return distance;
-        }
-    }
 }
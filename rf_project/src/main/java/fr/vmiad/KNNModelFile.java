@@ -0,0 +1,414 @@
+package fr.vmiad;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Sauvegarde et rechargement d'un modèle {@link KNN} (données, labels et
+ * index) dans un fichier binaire.
+ *
+ * <p>
+ * Le fichier commence par un en-tête fixe : un nombre magique, la version du
+ * format, la taille du contenu et sa somme de contrôle CRC32. Au
+ * rechargement, le fichier est projeté en mémoire ({@link FileChannel#map})
+ * et les tableaux sont copiés en bloc, sans aucune analyse de texte ni
+ * reconstruction de l'index. Un fichier d'une autre version, tronqué ou
+ * corrompu est refusé avec une {@link IOException}.
+ * </p>
+ *
+ * <p>
+ * Le fichier étant projeté d'un seul tenant, sa taille est limitée à
+ * {@value #MAX_FILE_SIZE} octets (2 Gio) : {@link #save(KNN, Path)} refuse un
+ * modèle plus gros dès que cette taille est dépassée pendant l'écriture, et
+ * {@link #open(Path)} refuse un fichier plus gros sans le projeter.
+ * </p>
+ *
+ * <p>
+ * Les index pris en charge sont {@link BruteForceIndex}, {@link KDTree},
+ * {@link BallTree}, {@link HNSWIndex} et {@link ProductQuantizationIndex}.
+ * </p>
+ */
+public class KNNModelFile {
+
+    static final int MAGIC = 0x52464B4E; // "RFKN"
+    static final int VERSION = 1; // Version du format
+    static final int HEADER_SIZE = 4 + 4 + 8 + 8; // Magique, version, taille, CRC32
+    static final long MAX_FILE_SIZE = Integer.MAX_VALUE; // Taille maximale projetable d'un seul tenant
+
+    // Type d'index enregistré dans le fichier
+    static final byte BRUTE_FORCE = 0;
+    static final byte KD_TREE = 1;
+    static final byte BALL_TREE = 2;
+    static final byte HNSW = 3;
+    static final byte PRODUCT_QUANTIZATION = 4;
+
+    private KNNModelFile() {
+    }
+
+    /**
+     * Enregistre un modèle dans un fichier. Le fichier est d'abord écrit à côté
+     * puis renommé, de sorte qu'un lecteur ne voit jamais un fichier à moitié
+     * écrit.
+     *
+     * @param knn  Le modèle à enregistrer.
+     * @param path Le chemin du fichier.
+     * @throws IOException              Si l'écriture échoue ou si le fichier
+     *                                  dépasserait {@value #MAX_FILE_SIZE}
+     *                                  octets.
+     * @throws IllegalArgumentException Si l'index du modèle n'est pas pris en
+     *                                  charge.
+     */
+    public static void save(KNN knn, Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            long payloadSize;
+            try (OutputStream file = Files.newOutputStream(temporary)) {
+                file.write(new byte[HEADER_SIZE]); // En-tête complété après l'écriture du contenu
+                CountingOutputStream counter = new CountingOutputStream(
+                        new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc),
+                        MAX_FILE_SIZE - HEADER_SIZE);
+                Output out = new Output(new DataOutputStream(counter));
+                writeModel(knn, out);
+                out.flush();
+                payloadSize = counter.count;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(payloadSize).putLong(crc.getValue()).flip();
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Recharge un modèle en vérifiant sa somme de contrôle.
+     *
+     * @param path Le chemin du fichier.
+     * @return Le modèle, prêt à prédire.
+     * @throws IOException Si le fichier est illisible, d'une autre version,
+     *                     corrompu ou trop gros.
+     */
+    public static KNN open(Path path) throws IOException {
+        return open(path, true);
+    }
+
+    /**
+     * Recharge un modèle.
+     *
+     * @param path           Le chemin du fichier.
+     * @param verifyChecksum true pour vérifier la somme de contrôle (lecture
+     *                       complète du fichier avant le chargement).
+     * @return Le modèle, prêt à prédire.
+     * @throws IOException Si le fichier est illisible, d'une autre version,
+     *                     corrompu ou plus gros que {@value #MAX_FILE_SIZE}
+     *                     octets.
+     */
+    public static KNN open(Path path, boolean verifyChecksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Fichier de modèle tronqué : " + path);
+            }
+            if (fileSize > MAX_FILE_SIZE) {
+                throw new IOException("Fichier de modèle de " + fileSize + " octets, au-delà de la limite de "
+                        + MAX_FILE_SIZE + " : " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Ce fichier n'est pas un modèle KNN : " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Version de modèle " + version + " incompatible (attendue : " + VERSION
+                        + ") : " + path);
+            }
+            long payloadSize = buffer.getLong();
+            long expectedCrc = buffer.getLong();
+            if (payloadSize != fileSize - HEADER_SIZE) {
+                throw new IOException("Fichier de modèle tronqué ou incomplet : " + path);
+            }
+            if (verifyChecksum) {
+                CRC32 crc = new CRC32();
+                crc.update(buffer.duplicate());
+                if (crc.getValue() != expectedCrc) {
+                    throw new IOException("Somme de contrôle invalide, fichier de modèle corrompu : " + path);
+                }
+            }
+            try {
+                return readModel(new Input(buffer));
+            } catch (RuntimeException e) {
+                throw new IOException("Contenu du fichier de modèle invalide : " + path, e);
+            }
+        }
+    }
+
+    private static void writeModel(KNN knn, Output out) throws IOException {
+        out.writeInt(knn.k());
+        out.writeStrings(knn.classNames());
+        out.writeInts(knn.labelIds());
+
+        NeighborIndex index = knn.index();
+        if (index instanceof BruteForceIndex) {
+            out.writeByte(BRUTE_FORCE);
+            ((BruteForceIndex) index).writeTo(out);
+        } else if (index instanceof KDTree) {
+            out.writeByte(KD_TREE);
+            ((KDTree) index).writeTo(out);
+        } else if (index instanceof BallTree) {
+            out.writeByte(BALL_TREE);
+            ((BallTree) index).writeTo(out);
+        } else if (index instanceof HNSWIndex) {
+            out.writeByte(HNSW);
+            ((HNSWIndex) index).writeTo(out);
+        } else if (index instanceof ProductQuantizationIndex) {
+            out.writeByte(PRODUCT_QUANTIZATION);
+            ((ProductQuantizationIndex) index).writeTo(out);
+        } else {
+            throw new IllegalArgumentException("Index non enregistrable : " + index.getClass().getName());
+        }
+    }
+
+    private static KNN readModel(Input in) throws IOException {
+        int k = in.readInt();
+        String[] classNames = in.readStrings();
+        int[] labelIds = in.readInts();
+
+        NeighborIndex index;
+        byte type = in.readByte();
+        switch (type) {
+            case BRUTE_FORCE:
+                index = BruteForceIndex.readFrom(in, classNames, labelIds);
+                break;
+            case KD_TREE:
+                index = KDTree.readFrom(in, classNames, labelIds);
+                break;
+            case BALL_TREE:
+                index = BallTree.readFrom(in, classNames, labelIds);
+                break;
+            case HNSW:
+                index = HNSWIndex.readFrom(in, classNames, labelIds);
+                break;
+            case PRODUCT_QUANTIZATION:
+                index = ProductQuantizationIndex.readFrom(in, classNames, labelIds);
+                break;
+            default:
+                throw new IOException("Type d'index inconnu dans le fichier de modèle : " + type);
+        }
+        return new KNN(k, classNames, labelIds, index);
+    }
+
+    /**
+     * Écrit les valeurs et les noms de fichiers d'une matrice (les labels sont
+     * enregistrés avec le modèle).
+     */
+    static void writeMatrix(FeatureMatrix matrix, Output out) throws IOException {
+        out.writeInt(matrix.rows());
+        out.writeInt(matrix.cols());
+        out.writeDoubles(matrix.data());
+        out.writeStrings(matrix.fileNames());
+    }
+
+    /**
+     * Relit une matrice écrite par {@link #writeMatrix}.
+     */
+    static FeatureMatrix readMatrix(Input in, String[] classNames, int[] labelIds) throws IOException {
+        int rows = in.readInt();
+        int cols = in.readInt();
+        double[] data = in.readDoubles();
+        String[] fileNames = in.readStrings();
+        return new FeatureMatrix(rows, cols, data, fileNames, labelIds, classNames);
+    }
+
+    /**
+     * Écriture des types primitifs et des tableaux dans le fichier de modèle.
+     * Chaque tableau est précédé de sa longueur.
+     */
+    static final class Output {
+        private final DataOutputStream out;
+        private final ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+
+        Output(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeByte(int value) throws IOException {
+            out.writeByte(value);
+        }
+
+        void writeInt(int value) throws IOException {
+            out.writeInt(value);
+        }
+
+        void writeDouble(double value) throws IOException {
+            out.writeDouble(value);
+        }
+
+        void writeInts(int[] values) throws IOException {
+            out.writeInt(values.length);
+            for (int start = 0; start < values.length; start += chunk.capacity() / 4) {
+                int end = Math.min(values.length, start + chunk.capacity() / 4);
+                chunk.clear();
+                chunk.asIntBuffer().put(values, start, end - start);
+                out.write(chunk.array(), 0, (end - start) * 4);
+            }
+        }
+
+        void writeDoubles(double[] values) throws IOException {
+            out.writeInt(values.length);
+            for (int start = 0; start < values.length; start += chunk.capacity() / 8) {
+                int end = Math.min(values.length, start + chunk.capacity() / 8);
+                chunk.clear();
+                chunk.asDoubleBuffer().put(values, start, end - start);
+                out.write(chunk.array(), 0, (end - start) * 8);
+            }
+        }
+
+        void writeBytes(byte[] values) throws IOException {
+            out.writeInt(values.length);
+            out.write(values);
+        }
+
+        /**
+         * Écrit un tableau de chaînes (UTF-8), les valeurs null étant
+         * conservées.
+         */
+        void writeStrings(String[] values) throws IOException {
+            out.writeInt(values.length);
+            for (String value : values) {
+                if (value == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Lecture du fichier de modèle projeté en mémoire.
+     */
+    static final class Input {
+        private final ByteBuffer buffer;
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer.get();
+        }
+
+        int readInt() {
+            return buffer.getInt();
+        }
+
+        double readDouble() {
+            return buffer.getDouble();
+        }
+
+        int[] readInts() throws IOException {
+            int[] values = new int[readLength(4)];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + 4 * values.length);
+            return values;
+        }
+
+        double[] readDoubles() throws IOException {
+            double[] values = new double[readLength(8)];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + 8 * values.length);
+            return values;
+        }
+
+        byte[] readBytes() throws IOException {
+            byte[] values = new byte[readLength(1)];
+            buffer.get(values);
+            return values;
+        }
+
+        String[] readStrings() throws IOException {
+            String[] values = new String[readLength(4)];
+            for (int i = 0; i < values.length; i++) {
+                int length = buffer.getInt();
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    values[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Lit la longueur d'un tableau et vérifie qu'elle est compatible avec la
+         * taille restante du fichier.
+         */
+        private int readLength(int elementSize) throws IOException {
+            int length = buffer.getInt();
+            if (length < 0 || (long) length * elementSize > buffer.remaining()) {
+                throw new IOException("Longueur de tableau invalide dans le fichier de modèle : " + length);
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Flux comptant les octets écrits, pour renseigner la taille du contenu dans
+     * l'en-tête, et refusant d'en écrire plus que {@code limit}.
+     */
+    private static final class CountingOutputStream extends java.io.FilterOutputStream {
+        private final long limit;
+        private long count;
+
+        CountingOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkLimit(1);
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkLimit(len);
+            out.write(b, off, len);
+            count += len;
+        }
+
+        private void checkLimit(int len) throws IOException {
+            if (count + len > limit) {
+                throw new IOException("Modèle trop gros pour être enregistré : le fichier dépasserait "
+                        + MAX_FILE_SIZE + " octets");
+            }
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package fr.vmiad;
 
 import java.io.File;
-import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
 /**
@@ -36,43 +37,36 @@ public class MainKMeans {
                 return;
             }
 
-            // Étape 2 : Lire les descripteurs et associer chaque fichier à ses
-            // caractéristiques et son label
-            List<DescriptorWithLabel> descriptors = new ArrayList<>();
+            // Étape 2 : Lire les descripteurs en parallèle, directement dans une
+            // matrice dense (label déduit du nom de fichier)
+            List<Path> paths = new ArrayList<>(descFiles.size());
             for (File file : descFiles) {
-                List<Double> features = DescReader.readDesc(file.getAbsolutePath()); // Lire les caractéristiques
-                String label = ClassName.getLabelFromFile(file.getName()); // Obtenir le label à partir du nom de
-                                                                           // fichier
-                descriptors.add(new DescriptorWithLabel(file.getName(), features, label));
+                paths.add(file.toPath());
             }
+            DescReader.LoadResult loaded = DescReader.readAll(paths, 4 * Runtime.getRuntime().availableProcessors());
+            loaded.printErrors();
+            FeatureMatrix featureMatrix = loaded.getMatrix();
 
-            // Extraire uniquement les caractéristiques pour K-Means
-            List<List<Double>> featuresList = descriptors.stream()
-                    .map(d -> d.getFeatures().stream().collect(Collectors.toList()))
-                    .collect(Collectors.toList());
-
-            // Normalisation des caractéristiques
-            List<List<Double>> normalizedFeaturesList = new ArrayList<>();
-            for (List<Double> features : featuresList) {
-                List<Double> normalizedFeatures = DataPreprocessor.normalizeFeatures(features);
-                normalizedFeaturesList.add(normalizedFeatures);
-            }
+            // Normalisation des caractéristiques (sur place, ligne par ligne)
+            DataPreprocessor.normalizeRows(featureMatrix);
 
             // Étape 3 : Appliquer la méthode du coude pour choisir le nombre optimal de
             // clusters
-            List<Double> inerties = new ArrayList<>();
+            // Les valeurs de k sont ajustées en parallèle, sur un thread par cœur
             int maxClusters = 10; // Tester de 1 à 10 clusters
+            ElbowSweep sweep = new ElbowSweep(1, maxClusters, maxIterations, System.nanoTime());
+            ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            List<ElbowSweep.Result> results;
+            try {
+                results = sweep.run(featureMatrix, executor);
+            } finally {
+                executor.shutdown();
+            }
+            System.out.print(ElbowSweep.toTable(results));
 
-            for (int k = 1; k <= maxClusters; k++) {
-                // Initialiser et ajuster K-Means pour chaque valeur de k
-                KMeans kmeans = new KMeans(k, maxIterations);
-                Map<Integer, List<List<Double>>> clusters = kmeans.fit(normalizedFeaturesList);
-
-                // Calculer l'inertie pour évaluer la qualité du clustering
-                double inertie = InertieCalculator.calculateInertie(clusters, kmeans.getCentroids());
-                inerties.add(inertie);
-
-                System.out.println("Nombre de clusters: " + k + " - Inertie: " + inertie);
+            List<Double> inerties = new ArrayList<>();
+            for (ElbowSweep.Result result : results) {
+                inerties.add(result.getInertia());
             }
 
             // Afficher les résultats de la méthode du coude
@@ -83,8 +77,8 @@ public class MainKMeans {
             // Remarque : Pour visualiser la courbe des inerties, une bibliothèque graphique
             // serait nécessaire
 
-        } catch (IOException e) {
-            System.err.println("Une erreur est survenue lors de la lecture des fichiers :");
+        } catch (IllegalStateException e) {
+            System.err.println("Une erreur est survenue lors de la lecture des fichiers ou du clustering :");
             e.printStackTrace();
         }
     }
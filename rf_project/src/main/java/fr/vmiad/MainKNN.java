@@ -1,7 +1,8 @@
 package fr.vmiad;
 
 import java.io.File;
-import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,69 +34,50 @@ public class MainKNN {
         List<String> trainingFiles = splitter.getTrainingSets().get(extension);
         List<String> testFiles = splitter.getTestSets().get(extension);
 
-        // Étape 3 : Créer les objets DescriptorWithLabel pour les fichiers
-        // d'entraînement
-        List<DescriptorWithLabel> trainingData = new ArrayList<>();
-        for (String fileName : trainingFiles) {
-            try {
-                // Chemin complet du fichier
-                String filePath = directory + "\\" + fileName;
-                // Lire les caractéristiques du fichier
-                List<Double> features = DescReader.readDesc(filePath);
-                List<Double> normalizedFeatures = DataPreprocessor.normalizeFeatures(features);
-
-                // Obtenir le label du fichier à partir de son nom ou de son répertoire
-                String label = ClassName.getLabelFromFile(fileName); // Méthode à définir dans ClassName
-
-                // Créer un objet DescriptorWithLabel et l'ajouter à la liste d'entraînement
-                DescriptorWithLabel descriptor = new DescriptorWithLabel(fileName, normalizedFeatures, label);
-
-                trainingData.add(descriptor);
-            } catch (IOException e) {
-                // Gérer les erreurs de lecture
-                e.printStackTrace();
-            }
-        }
+        // Étape 3 : Lire les fichiers d'entraînement en parallèle, directement
+        // dans une matrice dense (label déduit du nom de fichier)
+        int concurrency = 4 * Runtime.getRuntime().availableProcessors(); // Lectures simultanées
+        DescReader.LoadResult training = DescReader.readAll(toPaths(directory, trainingFiles), concurrency);
+        training.printErrors();
+
+        // Normaliser les données d'entraînement ligne par ligne
+        FeatureMatrix trainingMatrix = training.getMatrix();
+        DataPreprocessor.normalizeRows(trainingMatrix);
 
         // Étape 4 : Entraîner le modèle KNN avec les données d'entraînement
         int k = 3; // Nombre de voisins à considérer
-        KNN knn = new KNN(k, trainingData);
+        // Structure de recherche : KD_TREE pour les descripteurs de faible
+        // dimension (Yang, E34), BALL_TREE pour ART, GFD ou Zernike7
+        KNN.IndexType indexType = KNN.IndexType.BRUTE_FORCE;
+        KNN knn = new KNN(k, trainingMatrix, indexType);
 
         // Stocker les labels réels et prédits pour calculer les métriques plus tard
         List<String> actualLabels = new ArrayList<>();
         List<String> predictedLabels = new ArrayList<>();
 
-        // Étape 5 : Créer des objets pour les fichiers de test et effectuer des
-        // prédictions
-        for (String fileName : testFiles) {
-            try {
-                // Chemin complet du fichier de test
-                String filePath = directory + "\\" + fileName;
-                // Lire les caractéristiques du fichier
-                List<Double> features = DescReader.readDesc(filePath);
-                List<Double> normalizedFeatures = DataPreprocessor.normalizeFeatures(features);
-
-                // Obtenir le label réel du fichier à partir de son nom
-                String actualLabel = ClassName.getLabelFromFile(fileName);
-
-                // Prédire le label avec KNN
-                String predictedLabel = knn.predict(normalizedFeatures);
-
-                // Ajouter les résultats à nos listes
-                actualLabels.add(actualLabel);
-                predictedLabels.add(predictedLabel);
-
-                // Afficher les résultats
-                String result = "File: " + fileName + "\n" +
-                        "Actual label: " + actualLabel + "\n" +
-                        "Predicted label: " + predictedLabel + "\n";
-
-                System.out.println(result);
-
-            } catch (IOException e) {
-                // Gérer les erreurs de lecture
-                e.printStackTrace();
-            }
+        // Étape 5 : Lire les fichiers de test et les regrouper dans une matrice
+        DescReader.LoadResult test = DescReader.readAll(toPaths(directory, testFiles), concurrency);
+        test.printErrors();
+        FeatureMatrix testMatrix = test.getMatrix();
+        DataPreprocessor.normalizeRows(testMatrix);
+
+        // Étape 6 : Prédire tous les labels en parallèle avec KNN
+        BatchPrediction predictions = knn.predictBatch(testMatrix);
+
+        for (int i = 0; i < testMatrix.rows(); i++) {
+            String actualLabel = testMatrix.getLabel(i);
+            String predictedLabel = predictions.getLabel(i);
+
+            // Ajouter les résultats à nos listes
+            actualLabels.add(actualLabel);
+            predictedLabels.add(predictedLabel);
+
+            // Afficher les résultats
+            String result = "File: " + testMatrix.getFileName(i) + "\n" +
+                    "Actual label: " + actualLabel + "\n" +
+                    "Predicted label: " + predictedLabel + "\n";
+
+            System.out.println(result);
         }
 
         // // Après avoir effectué toutes les prédictions, calculons les métriques
@@ -107,4 +89,15 @@ public class MainKNN {
         // predictedLabels.size());
 
     }
+
+    /**
+     * Chemins des fichiers d'un répertoire à partir de leurs noms.
+     */
+    private static List<Path> toPaths(String directory, List<String> fileNames) {
+        List<Path> paths = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames) {
+            paths.add(Paths.get(directory, fileName));
+        }
+        return paths;
+    }
 }
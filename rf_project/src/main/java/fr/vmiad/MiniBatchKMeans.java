@@ -0,0 +1,341 @@
+package fr.vmiad;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * K-Means par mini-lots, alimenté directement par un répertoire de fichiers
+ * descripteurs.
+ *
+ * <p>
+ * Les fichiers sont lus par lots de {@code batchSize} au fil d'un parcours du
+ * répertoire ({@link DirectoryStream}) : seul le lot courant est en mémoire,
+ * ce qui permet de traiter des corpus plus grands que le tas. Chaque point du
+ * lot est affecté au centroïde le plus proche, puis le centroïde est déplacé
+ * vers lui avec un taux d'apprentissage propre de 1 / (nombre de points déjà
+ * reçus par ce centroïde) (Sculley, « Web-scale k-means clustering »).
+ * </p>
+ *
+ * <p>
+ * L'apprentissage s'arrête après un nombre de lots donné, lorsque les
+ * centroïdes ne bougent presque plus, ou sur appel de {@link #stop()}. L'état
+ * (centroïdes, compteurs, position dans le répertoire) peut être enregistré
+ * avec {@link #saveCheckpoint(Path)} puis repris avec
+ * {@link #loadCheckpoint(Path)} ; la reprise suppose que le contenu du
+ * répertoire n'a pas changé.
+ * </p>
+ */
+public class MiniBatchKMeans {
+
+    private static final int CHECKPOINT_MAGIC = 0x524B4D42; // "RKMB"
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final double CONVERGENCE_THRESHOLD = 0.000001; // Seuil de convergence
+
+    private final int numClusters; // Nombre de clusters
+    private final int batchSize; // Nombre de fichiers par lot
+    private final long seed; // Graine du choix des centroïdes initiaux
+    private boolean normalizeRows = true; // Normalisation de chaque descripteur lu
+    private double[] centroids; // Centroïdes, ligne par ligne (null avant le premier lot)
+    private long[] counts; // Nombre de points reçus par chaque centroïde
+    private int dimension; // Dimension des données
+    private long batches; // Nombre de lots traités
+    private long position; // Nombre de fichiers déjà consommés dans le parcours courant
+    private long skippedFiles; // Fichiers illisibles ou de mauvaise dimension
+    private volatile boolean stopRequested; // Arrêt demandé par un autre thread
+
+    /**
+     * Constructeur.
+     *
+     * @param numClusters Nombre de clusters.
+     * @param batchSize   Nombre de fichiers par lot.
+     * @param seed        Graine du choix des centroïdes initiaux.
+     */
+    public MiniBatchKMeans(int numClusters, int batchSize, long seed) {
+        if (numClusters < 1 || batchSize < numClusters) {
+            throw new IllegalArgumentException("Paramètres invalides : numClusters=" + numClusters
+                    + ", batchSize=" + batchSize);
+        }
+        this.numClusters = numClusters;
+        this.batchSize = batchSize;
+        this.seed = seed;
+    }
+
+    /**
+     * Active ou désactive la normalisation de chaque descripteur lu (avec
+     * {@link DataPreprocessor#normalizeFeatures(double[], int, int)}, activée
+     * par défaut comme dans {@link MainKMeans}).
+     *
+     * @param normalizeRows true pour normaliser.
+     */
+    public void setNormalizeRows(boolean normalizeRows) {
+        this.normalizeRows = normalizeRows;
+    }
+
+    /**
+     * Demande l'arrêt de l'apprentissage à la fin du lot courant. L'état reste
+     * cohérent et peut être enregistré.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Apprend les centroïdes sur les fichiers d'un répertoire, en reprenant là
+     * où l'apprentissage précédent s'était arrêté. Le répertoire est reparcouru
+     * depuis le début tant que le nombre de lots n'est pas atteint.
+     *
+     * @param directory  Le répertoire des fichiers descripteurs.
+     * @param extension  L'extension des fichiers à lire.
+     * @param maxBatches Le nombre maximal de lots à traiter lors de cet appel.
+     * @return Le nombre de lots traités lors de cet appel : moins de
+     *         {@code maxBatches} sans appel à {@link #stop()} signifie que les
+     *         centroïdes ont convergé (ou que le répertoire ne contient aucun
+     *         fichier lisible).
+     * @throws IOException Si le répertoire ne peut pas être parcouru.
+     */
+    public long fit(Path directory, String extension, long maxBatches) throws IOException {
+        stopRequested = false;
+        long done = 0;
+        while (done < maxBatches && !stopRequested) {
+            boolean fromStart = position == 0;
+            boolean progress = false;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + extension)) {
+                Iterator<Path> files = stream.iterator();
+                // Reprise : sauter les fichiers déjà consommés dans ce parcours
+                for (long i = 0; i < position && files.hasNext(); i++) {
+                    files.next();
+                }
+                while (done < maxBatches && !stopRequested) {
+                    List<double[]> batch = readBatch(files);
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    progress = true;
+                    double shift = update(batch);
+                    done++;
+                    if (shift < CONVERGENCE_THRESHOLD) {
+                        return done;
+                    }
+                }
+                if (!files.hasNext() && !stopRequested && done < maxBatches) {
+                    position = 0; // Fin du parcours : on recommence au début du répertoire
+                }
+            }
+            if (!progress && fromStart) {
+                break; // Aucun fichier lisible dans un parcours complet
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Lit le lot suivant. Un fichier illisible ou de mauvaise dimension est
+     * signalé et ignoré.
+     */
+    private List<double[]> readBatch(Iterator<Path> files) {
+        List<double[]> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && files.hasNext()) {
+            Path file = files.next();
+            position++;
+            try {
+                double[] features = DescReader.readFeatures(file);
+                int expected = centroids != null ? dimension
+                        : batch.isEmpty() ? features.length : batch.get(0).length;
+                if (features.length != expected) {
+                    System.err.println("Dimension " + features.length + " au lieu de " + expected + " : " + file);
+                    skippedFiles++;
+                    continue;
+                }
+                if (normalizeRows) {
+                    DataPreprocessor.normalizeFeatures(features, 0, features.length);
+                }
+                batch.add(features);
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Fichier ignoré : " + file + " (" + e.getMessage() + ")");
+                skippedFiles++;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Met à jour les centroïdes avec un lot.
+     *
+     * @return La somme des déplacements des centroïdes pendant le lot.
+     */
+    private double update(List<double[]> batch) {
+        if (centroids == null) {
+            initialize(batch);
+        }
+        double[] before = centroids.clone();
+
+        // Affectation avec les centroïdes du début du lot, puis mise à jour
+        int[] assignments = new int[batch.size()];
+        for (int p = 0; p < batch.size(); p++) {
+            assignments[p] = closestCentroid(batch.get(p));
+        }
+        for (int p = 0; p < batch.size(); p++) {
+            double[] point = batch.get(p);
+            int base = assignments[p] * dimension;
+            double rate = 1.0 / ++counts[assignments[p]];
+            for (int j = 0; j < dimension; j++) {
+                centroids[base + j] += rate * (point[j] - centroids[base + j]);
+            }
+        }
+        batches++;
+
+        double shift = 0.0;
+        for (int c = 0; c < numClusters; c++) {
+            shift += Math.sqrt(DistanceKernels.squaredL2(before, c * dimension, centroids, c * dimension,
+                    dimension));
+        }
+        return shift;
+    }
+
+    /**
+     * Centroïdes initiaux : des points distincts du premier lot tirés au hasard.
+     */
+    private void initialize(List<double[]> batch) {
+        if (batch.size() < numClusters) {
+            throw new IllegalStateException("Le premier lot ne contient que " + batch.size()
+                    + " descripteurs pour " + numClusters + " clusters");
+        }
+        dimension = batch.get(0).length;
+        centroids = new double[numClusters * dimension];
+        counts = new long[numClusters];
+        List<Integer> rows = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            rows.add(i);
+        }
+        Collections.shuffle(rows, new Random(seed));
+        for (int c = 0; c < numClusters; c++) {
+            System.arraycopy(batch.get(rows.get(c)), 0, centroids, c * dimension, dimension);
+        }
+    }
+
+    /**
+     * Retourne le cluster le plus proche d'un point.
+     *
+     * @param point Les caractéristiques du point (normalisées comme à
+     *              l'apprentissage).
+     * @return L'indice du cluster.
+     */
+    public int closestCentroid(double[] point) {
+        int closest = 0;
+        double minDistance = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < numClusters; c++) {
+            double distance = DistanceKernels.squaredL2(point, 0, centroids, c * dimension, dimension);
+            if (distance < minDistance) {
+                closest = c;
+                minDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return Les centroïdes, ligne par ligne (tableau non copié, null avant le
+     *         premier lot).
+     */
+    public double[] getCentroidArray() {
+        return centroids;
+    }
+
+    /**
+     * @return Le nombre total de lots traités.
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * @return Le nombre de fichiers ignorés (illisibles ou de mauvaise
+     *         dimension).
+     */
+    public long getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    /**
+     * Enregistre l'état de l'apprentissage. Le fichier est écrit à côté puis
+     * renommé.
+     *
+     * @param path Le chemin du fichier.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public void saveCheckpoint(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(CHECKPOINT_VERSION);
+                out.writeInt(numClusters);
+                out.writeInt(batchSize);
+                out.writeLong(seed);
+                out.writeBoolean(normalizeRows);
+                out.writeLong(batches);
+                out.writeLong(position);
+                out.writeLong(skippedFiles);
+                out.writeBoolean(centroids != null);
+                if (centroids != null) {
+                    out.writeInt(dimension);
+                    for (double value : centroids) {
+                        out.writeDouble(value);
+                    }
+                    for (long count : counts) {
+                        out.writeLong(count);
+                    }
+                }
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Recharge un état enregistré avec {@link #saveCheckpoint(Path)}.
+     *
+     * @param path Le chemin du fichier.
+     * @return L'apprentissage, prêt à reprendre avec {@link #fit}.
+     * @throws IOException Si le fichier est illisible ou d'une autre version.
+     */
+    public static MiniBatchKMeans loadCheckpoint(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+                throw new IOException("Point de reprise invalide ou d'une autre version : " + path);
+            }
+            MiniBatchKMeans kmeans = new MiniBatchKMeans(in.readInt(), in.readInt(), in.readLong());
+            kmeans.normalizeRows = in.readBoolean();
+            kmeans.batches = in.readLong();
+            kmeans.position = in.readLong();
+            kmeans.skippedFiles = in.readLong();
+            if (in.readBoolean()) {
+                kmeans.dimension = in.readInt();
+                kmeans.centroids = new double[kmeans.numClusters * kmeans.dimension];
+                for (int i = 0; i < kmeans.centroids.length; i++) {
+                    kmeans.centroids[i] = in.readDouble();
+                }
+                kmeans.counts = new long[kmeans.numClusters];
+                for (int c = 0; c < kmeans.numClusters; c++) {
+                    kmeans.counts[c] = in.readLong();
+                }
+            }
+            return kmeans;
+        }
+    }
+}
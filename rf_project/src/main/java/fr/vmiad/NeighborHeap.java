@@ -0,0 +1,162 @@
+package fr.vmiad;
+
+/**
+ * Tas-max de taille fixe conservant les K meilleurs voisins rencontrés.
+ *
+ * <p>
+ * Les distances et les indices sont stockés dans deux tableaux primitifs : on
+ * n'alloue rien pendant le parcours des données. La racine du tas est le plus
+ * éloigné des voisins retenus, ce qui permet de rejeter un candidat en une
+ * seule comparaison. À distance égale, le voisin d'indice le plus petit est
+ * considéré comme le plus proche, ce qui reproduit le résultat d'un tri stable
+ * par distance.
+ * </p>
+ */
+public final class NeighborHeap {
+
+    private final double[] distances; // Distances des voisins retenus
+    private final int[] indices; // Indices des voisins retenus
+    private int size; // Nombre de voisins retenus
+
+    /**
+     * Constructeur du tas.
+     *
+     * @param capacity Le nombre maximal de voisins à conserver (K).
+     */
+    public NeighborHeap(int capacity) {
+        this.distances = new double[capacity];
+        this.indices = new int[capacity];
+    }
+
+    /**
+     * Vide le tas pour le réutiliser sur une nouvelle requête.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return Le nombre de voisins retenus.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Le nombre maximal de voisins conservés.
+     */
+    public int capacity() {
+        return distances.length;
+    }
+
+    /**
+     * Retourne la distance qu'un candidat doit battre pour entrer dans le tas :
+     * la distance du K-ième voisin si le tas est plein, l'infini sinon.
+     *
+     * @return Le seuil courant.
+     */
+    public double threshold() {
+        return size < distances.length ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    /**
+     * Propose un candidat. Il est retenu s'il fait partie des K plus proches vus
+     * jusqu'ici.
+     *
+     * @param distance La distance du candidat.
+     * @param index    L'indice du candidat.
+     * @return true si le candidat a été retenu.
+     */
+    public boolean offer(double distance, int index) {
+        if (size < distances.length) {
+            // Insertion en bas du tas puis remontée
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!greater(distance, index, distances[parent], indices[parent])) {
+                    break;
+                }
+                distances[i] = distances[parent];
+                indices[i] = indices[parent];
+                i = parent;
+            }
+            distances[i] = distance;
+            indices[i] = index;
+            return true;
+        }
+        if (size == 0 || !greater(distances[0], indices[0], distance, index)) {
+            return false;
+        }
+        // Remplacement de la racine puis descente
+        siftDown(distance, index, size);
+        return true;
+    }
+
+    /**
+     * Trie les voisins retenus du plus proche au plus éloigné. Après cet appel,
+     * {@link #distance(int)} et {@link #index(int)} parcourent les voisins dans
+     * l'ordre ; le tas ne doit plus recevoir de candidats avant
+     * {@link #clear()}.
+     */
+    public void sort() {
+        // Tri par tas : on extrait la racine (le plus éloigné) vers la fin
+        for (int end = size - 1; end > 0; end--) {
+            double distance = distances[end];
+            int index = indices[end];
+            distances[end] = distances[0];
+            indices[end] = indices[0];
+            siftDown(distance, index, end);
+        }
+    }
+
+    /**
+     * @param i La position dans le tas (ou dans l'ordre trié après
+     *          {@link #sort()}).
+     * @return La distance du voisin à cette position.
+     */
+    public double distance(int i) {
+        return distances[i];
+    }
+
+    /**
+     * @param i La position dans le tas (ou dans l'ordre trié après
+     *          {@link #sort()}).
+     * @return L'indice du voisin à cette position.
+     */
+    public int index(int i) {
+        return indices[i];
+    }
+
+    /**
+     * Place l'élément donné à la racine et le fait descendre dans les
+     * {@code limit} premières cases.
+     */
+    private void siftDown(double distance, int index, int limit) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= limit) {
+                break;
+            }
+            if (child + 1 < limit
+                    && greater(distances[child + 1], indices[child + 1], distances[child], indices[child])) {
+                child++;
+            }
+            if (!greater(distances[child], indices[child], distance, index)) {
+                break;
+            }
+            distances[i] = distances[child];
+            indices[i] = indices[child];
+            i = child;
+        }
+        distances[i] = distance;
+        indices[i] = index;
+    }
+
+    /**
+     * Ordre total utilisé par le tas : distance, puis indice.
+     */
+    private static boolean greater(double d1, int i1, double d2, int i2) {
+        return d1 > d2 || (d1 == d2 && i1 > i2);
+    }
+}
@@ -0,0 +1,43 @@
+package fr.vmiad;
+
+/**
+ * Structure de recherche des plus proches voisins utilisée par {@link KNN}.
+ *
+ * <p>
+ * Une implémentation est construite une seule fois sur les données
+ * d'entraînement, puis interrogée pour chaque point à classer. Les voisins
+ * sont désignés par leur indice de ligne dans la matrice d'entraînement et
+ * les distances sont celles d'une {@link DistanceMetric} (distance
+ * euclidienne au carré par défaut).
+ * </p>
+ */
+public interface NeighborIndex {
+
+    /**
+     * Recherche les plus proches voisins d'un point et les propose au tas. Le
+     * nombre de voisins cherchés est la capacité du tas.
+     *
+     * @param query     Les caractéristiques du point.
+     * @param neighbors Le tas recevant les voisins (vide à l'appel).
+     */
+    void search(double[] query, NeighborHeap neighbors);
+
+    /**
+     * @return Le nombre de points indexés.
+     */
+    int size();
+
+    /**
+     * @return La dimension des points indexés.
+     */
+    int dimension();
+
+    /**
+     * @return Un numéro incrémenté à chaque changement de réglage modifiant
+     *         les résultats de la recherche (par exemple
+     *         {@link HNSWIndex#setEfSearch(int)}) ; constant par défaut.
+     */
+    default long searchVersion() {
+        return 0;
+    }
+}
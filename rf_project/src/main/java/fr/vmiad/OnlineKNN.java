@@ -0,0 +1,678 @@
+package fr.vmiad;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Modèle KNN modifiable pendant qu'il sert des prédictions.
+ *
+ * <p>
+ * Les références sont rangées dans des segments d'au plus
+ * {@value #SEGMENT_SIZE} lignes. Un segment n'est jamais modifié : une
+ * insertion ou une suppression recopie le seul segment concerné puis publie
+ * un nouvel instantané de la liste des segments (copie sur écriture). Les
+ * requêtes lisent l'instantané courant sans verrou et ne voient donc jamais
+ * une modification à moitié faite ; les écritures sont sérialisées entre
+ * elles.
+ * </p>
+ *
+ * <p>
+ * Une capacité peut être fixée : au-delà, les références en trop sont choisies
+ * en une seule passe selon la politique choisie (voir {@link EvictionPolicy})
+ * puis retirées ensemble, chaque segment n'étant recopié qu'une fois. Deux
+ * segments voisins sont fusionnés quand l'un d'eux est à moins de moitié plein
+ * et que leur réunion tient dans un segment.
+ * </p>
+ */
+public class OnlineKNN {
+
+    /**
+     * Choix de la référence à évincer quand la capacité est atteinte.
+     */
+    public enum EvictionPolicy {
+        /** La référence insérée le plus tôt. */
+        OLDEST,
+        /**
+         * Dans la classe qui compte le plus de références, celle qui a le moins
+         * souvent servi de voisin (la plus ancienne en cas d'égalité). Chaque
+         * classe garde ainsi une réserve de ses références les plus utiles.
+         */
+        LEAST_USED
+    }
+
+    static final int SEGMENT_SIZE = 1024; // Nombre maximal de lignes par segment
+    private static final LongConsumer NO_LISTENER = id -> {
+    }; // Évictions non signalées
+
+    private final int k; // Nombre de voisins à considérer
+    private final int dimension; // Dimension des caractéristiques
+    private final DistanceMetric metric; // Distance utilisée
+    private final int capacity; // Nombre maximal de références (0 : illimité)
+    private final EvictionPolicy policy; // Politique d'éviction
+    private final List<String> classNames = new ArrayList<>(); // Dictionnaire des classes (écrivains)
+    private final Map<String, Integer> classIndex = new HashMap<>(); // Indice de chaque classe (écrivains)
+    private long nextId; // Identifiant de la prochaine référence (écrivains)
+    private volatile Snapshot snapshot; // État publié, lu par les requêtes
+    private volatile PredictionCache cache; // Cache des prédictions (null : désactivé)
+
+    /**
+     * Constructeur d'un modèle vide, sans capacité maximale, avec la distance
+     * euclidienne.
+     *
+     * @param k         Le nombre de voisins à considérer.
+     * @param dimension La dimension des caractéristiques.
+     */
+    public OnlineKNN(int k, int dimension) {
+        this(k, dimension, DistanceMetric.L2, 0, EvictionPolicy.OLDEST);
+    }
+
+    /**
+     * Constructeur d'un modèle vide.
+     *
+     * @param k         Le nombre de voisins à considérer.
+     * @param dimension La dimension des caractéristiques.
+     * @param metric    La distance utilisée.
+     * @param capacity  Le nombre maximal de références (0 pour illimité).
+     * @param policy    La politique d'éviction quand la capacité est atteinte.
+     * @throws IllegalArgumentException Si un paramètre est invalide.
+     */
+    public OnlineKNN(int k, int dimension, DistanceMetric metric, int capacity, EvictionPolicy policy) {
+        if (k < 1 || dimension < 0 || capacity < 0) {
+            throw new IllegalArgumentException("Paramètres invalides : k=" + k + ", dimension=" + dimension
+                    + ", capacity=" + capacity);
+        }
+        this.k = k;
+        this.dimension = dimension;
+        this.metric = metric;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.snapshot = new Snapshot(new Segment[0], new String[0], 0, new int[0]);
+    }
+
+    /**
+     * Ajoute une référence.
+     *
+     * @param features Les caractéristiques.
+     * @param label    Le label.
+     * @return L'identifiant de la référence, à passer à {@link #remove(long)}.
+     * @throws IllegalArgumentException Si la dimension ne correspond pas.
+     */
+    public long insert(double[] features, String label) {
+        checkDimension(features);
+        synchronized (this) {
+            long id = nextId;
+            publish(evictOverCapacity(append(snapshot, features, 0, new int[] { labelId(label) }, 1), NO_LISTENER));
+            return id;
+        }
+    }
+
+    /**
+     * Ajoute toutes les lignes d'une matrice, publiées en une seule fois.
+     *
+     * @param data Les références à ajouter (features + labels).
+     * @return L'identifiant de la première ligne ; les suivantes ont des
+     *         identifiants consécutifs.
+     * @throws IllegalArgumentException Si la dimension ne correspond pas.
+     */
+    public long insertAll(FeatureMatrix data) {
+        return update(new long[0], data);
+    }
+
+    /**
+     * Retire une référence.
+     *
+     * @param id L'identifiant renvoyé à l'insertion.
+     * @return true si la référence était présente.
+     */
+    public synchronized boolean remove(long id) {
+        Segment[] segments = snapshot.segments;
+        for (int s = 0; s < segments.length; s++) {
+            int row = segments[s].find(id);
+            if (row >= 0) {
+                publish(removeAt(snapshot, s, row));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retire des références et en ajoute d'autres, publiées en une seule
+     * fois : une requête voit soit l'état d'avant, soit l'état d'après, jamais
+     * un état intermédiaire.
+     *
+     * @param removals   Les identifiants des références à retirer (ceux qui
+     *                   ne sont plus présents sont ignorés).
+     * @param insertions Les références à ajouter (features + labels).
+     * @return L'identifiant de la première ligne ajoutée ; les suivantes ont
+     *         des identifiants consécutifs.
+     * @throws IllegalArgumentException Si la dimension ne correspond pas.
+     */
+    public long update(long[] removals, FeatureMatrix insertions) {
+        return update(removals, insertions, NO_LISTENER);
+    }
+
+    /**
+     * Comme {@link #update(long[], FeatureMatrix)}, en signalant les
+     * références évincées pour respecter la capacité (éventuellement parmi
+     * celles qui viennent d'être ajoutées).
+     *
+     * @param removals   Les identifiants des références à retirer (ceux qui
+     *                   ne sont plus présents sont ignorés).
+     * @param insertions Les références à ajouter (features + labels).
+     * @param onEvicted  Appelé, sous le verrou des écritures et avant la
+     *                   publication, avec l'identifiant de chaque référence
+     *                   évincée.
+     * @return L'identifiant de la première ligne ajoutée ; les suivantes ont
+     *         des identifiants consécutifs.
+     * @throws IllegalArgumentException Si la dimension ne correspond pas.
+     */
+    public long update(long[] removals, FeatureMatrix insertions, LongConsumer onEvicted) {
+        if (insertions.rows() > 0 && insertions.cols() != dimension) {
+            throw new IllegalArgumentException("Dimension " + insertions.cols() + " au lieu de " + dimension);
+        }
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (removals.length > 0) {
+                Set<Long> ids = new HashSet<>();
+                for (long id : removals) {
+                    ids.add(id);
+                }
+                current = removeAll(current, ids);
+            }
+
+            long first = nextId;
+            int[] labelIds = new int[insertions.rows()];
+            for (int row = 0; row < insertions.rows(); row++) {
+                labelIds[row] = labelId(insertions.getLabel(row));
+            }
+            current = append(current, insertions.data(), 0, labelIds, insertions.rows());
+            publish(evictOverCapacity(current, onEvicted));
+            return first;
+        }
+    }
+
+    /**
+     * @return Le nombre de références de chaque classe présente, dans l'ordre
+     *         du dictionnaire des classes.
+     */
+    public Map<String, Integer> getClassCounts() {
+        Snapshot current = snapshot;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int c = 0; c < current.classNames.length; c++) {
+            if (current.classCounts[c] > 0) {
+                counts.put(current.classNames[c], current.classCounts[c]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Publie un nouvel instantané et vide le cache (appelé sous le verrou).
+     */
+    private void publish(Snapshot updated) {
+        snapshot = updated;
+        invalidateCache();
+    }
+
+    /**
+     * Place un cache devant {@link #predict(double[])} et
+     * {@link #predictWithScores(double[])}. Il est vidé à chaque insertion ou
+     * suppression. Une prédiction servie par le cache ne compte pas dans
+     * l'utilisation des voisins (politique {@link EvictionPolicy#LEAST_USED}).
+     *
+     * @param cache Le cache à utiliser (null pour le désactiver).
+     */
+    public void setCache(PredictionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return Le cache des prédictions, ou null s'il est désactivé.
+     */
+    public PredictionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Vide le cache après la publication d'un nouvel instantané.
+     */
+    private void invalidateCache() {
+        PredictionCache current = cache;
+        if (current != null) {
+            current.invalidate();
+        }
+    }
+
+    /**
+     * @return Le nombre de références du modèle.
+     */
+    public int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * @return La dimension des caractéristiques.
+     */
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Prédit le label pour un nouveau point donné ses caractéristiques.
+     *
+     * @param features Les caractéristiques du point à prédire.
+     * @return Le label prédit, ou null si le modèle est vide.
+     */
+    public String predict(double[] features) {
+        Map<String, Integer> labelCounts = labelCounts(features);
+        return labelCounts.isEmpty() ? null : KNN.majorityLabel(labelCounts);
+    }
+
+    /**
+     * Prédit les scores pour chaque classe pour un nouveau point donné ses
+     * caractéristiques.
+     *
+     * @param features Les caractéristiques du point à prédire.
+     * @return Un map des scores pour chaque classe.
+     */
+    public Map<String, Double> predictWithScores(double[] features) {
+        Map<String, Double> classScores = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : labelCounts(features).entrySet()) {
+            classScores.put(entry.getKey(), entry.getValue() / (double) k);
+        }
+        return classScores;
+    }
+
+    /**
+     * Compte les labels des voisins d'un point, en passant par le cache s'il
+     * est activé.
+     */
+    private Map<String, Integer> labelCounts(double[] features) {
+        checkDimension(features);
+        PredictionCache current = cache;
+        return current == null ? countLabels(features) : current.labelCounts(features, this::countLabels);
+    }
+
+    /**
+     * Recherche les voisins dans l'instantané courant et compte leurs labels.
+     * Chaque voisin retenu voit son compteur d'utilisation augmenter.
+     */
+    private Map<String, Integer> countLabels(double[] features) {
+        Snapshot current = snapshot;
+        NeighborHeap neighbors = new NeighborHeap(Math.min(k, current.size));
+        Segment[] segments = current.segments;
+        for (int s = 0; s < segments.length; s++) {
+            Segment segment = segments[s];
+            for (int row = 0; row < segment.size; row++) {
+                double distance = metric.distance(features, 0, segment.data, row * dimension, dimension,
+                        neighbors.threshold());
+                neighbors.offer(distance, s * SEGMENT_SIZE + row);
+            }
+        }
+
+        Map<String, Integer> labelCounts = new HashMap<>();
+        neighbors.sort();
+        for (int i = 0; i < neighbors.size(); i++) {
+            Segment segment = segments[neighbors.index(i) / SEGMENT_SIZE];
+            int row = neighbors.index(i) % SEGMENT_SIZE;
+            segment.uses.incrementAndGet(row);
+            labelCounts.merge(current.classNames[segment.labelIds[row]], 1, Integer::sum);
+        }
+        return labelCounts;
+    }
+
+    private void checkDimension(double[] features) {
+        if (features.length != dimension) {
+            throw new IllegalArgumentException("Dimension " + features.length + " au lieu de " + dimension);
+        }
+    }
+
+    /**
+     * Indice d'une classe dans le dictionnaire, ajoutée si nécessaire (appelé
+     * sous le verrou).
+     */
+    private int labelId(String label) {
+        Integer id = classIndex.get(label);
+        if (id == null) {
+            id = classNames.size();
+            classNames.add(label);
+            classIndex.put(label, id);
+        }
+        return id;
+    }
+
+    /**
+     * Ajoute {@code count} lignes consécutives à la fin des segments, avec des
+     * identifiants consécutifs (appelé sous le verrou).
+     *
+     * @return Le nouvel instantané, non publié.
+     */
+    private Snapshot append(Snapshot current, double[] source, int offset, int[] labelIds, int count) {
+        // Compléter le dernier segment, puis créer des segments pleins
+        List<Segment> segments = new ArrayList<>(Arrays.asList(current.segments));
+        int[] classCounts = Arrays.copyOf(current.classCounts, classNames.size());
+        int row = 0;
+        while (row < count) {
+            int lastIndex = segments.size() - 1;
+            Segment last = lastIndex >= 0 ? segments.get(lastIndex) : null;
+            if (last == null || last.size == SEGMENT_SIZE) {
+                last = Segment.empty(dimension);
+                segments.add(last);
+                lastIndex++;
+            }
+            int added = Math.min(SEGMENT_SIZE - last.size, count - row);
+            segments.set(lastIndex, last.append(nextId, source, offset + row * dimension, labelIds, row, added));
+            nextId += added;
+            row += added;
+        }
+        for (int i = 0; i < count; i++) {
+            classCounts[labelIds[i]]++;
+        }
+        return new Snapshot(segments.toArray(new Segment[0]), classNames.toArray(new String[0]),
+                current.size + count, classCounts);
+    }
+
+    /**
+     * Retire une ligne d'un segment (appelé sous le verrou).
+     *
+     * @return Le nouvel instantané, non publié.
+     */
+    private Snapshot removeAt(Snapshot current, int s, int row) {
+        Segment[] segments = current.segments;
+        List<Segment> updated = new ArrayList<>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            addCompacted(updated, i == s ? segments[s].without(row) : segments[i]);
+        }
+        int[] classCounts = current.classCounts.clone();
+        classCounts[segments[s].labelIds[row]]--;
+        return new Snapshot(updated.toArray(new Segment[0]), current.classNames, current.size - 1, classCounts);
+    }
+
+    /**
+     * Retire les références dont l'identifiant est dans {@code removed}, en
+     * recopiant au plus une fois chaque segment (appelé sous le verrou).
+     *
+     * @return Le nouvel instantané, non publié.
+     */
+    private Snapshot removeAll(Snapshot current, Set<Long> removed) {
+        List<Segment> kept = new ArrayList<>(current.segments.length);
+        int[] classCounts = current.classCounts.clone();
+        int size = 0;
+        for (Segment segment : current.segments) {
+            Segment remaining = segment.without(removed, classCounts);
+            size += remaining.size;
+            addCompacted(kept, remaining);
+        }
+        return new Snapshot(kept.toArray(new Segment[0]), current.classNames, size, classCounts);
+    }
+
+    /**
+     * Ajoute un segment à la fin de la liste. Un segment vide est ignoré ; il
+     * est fusionné avec le précédent si l'un des deux est à moins de moitié
+     * plein et que leur réunion tient dans un segment.
+     */
+    private static void addCompacted(List<Segment> segments, Segment segment) {
+        if (segment.size == 0) {
+            return;
+        }
+        int last = segments.size() - 1;
+        if (last >= 0) {
+            Segment previous = segments.get(last);
+            if (previous.size + segment.size <= SEGMENT_SIZE
+                    && (previous.size < SEGMENT_SIZE / 2 || segment.size < SEGMENT_SIZE / 2)) {
+                segments.set(last, previous.concat(segment));
+                return;
+            }
+        }
+        segments.add(segment);
+    }
+
+    /**
+     * Évince en une fois les références au-delà de la capacité (appelé sous le
+     * verrou).
+     *
+     * @param onEvicted Appelé avec l'identifiant de chaque référence évincée.
+     * @return Le nouvel instantané, non publié.
+     */
+    private Snapshot evictOverCapacity(Snapshot current, LongConsumer onEvicted) {
+        int excess = capacity > 0 ? current.size - capacity : 0;
+        if (excess <= 0) {
+            return current;
+        }
+        Set<Long> victims = policy == EvictionPolicy.OLDEST ? oldest(current, excess) : leastUsed(current, excess);
+        for (long id : victims) {
+            onEvicted.accept(id);
+        }
+        return removeAll(current, victims);
+    }
+
+    /**
+     * @return Les identifiants des {@code count} références les plus
+     *         anciennes.
+     */
+    private static Set<Long> oldest(Snapshot current, int count) {
+        // Les lignes restent dans l'ordre d'insertion : les plus anciennes sont en tête
+        Set<Long> victims = new HashSet<>();
+        for (Segment segment : current.segments) {
+            for (int row = 0; row < segment.size && victims.size() < count; row++) {
+                victims.add(segment.ids[row]);
+            }
+        }
+        return victims;
+    }
+
+    /**
+     * Choisit {@code count} références comme si on évinçait une à une, dans
+     * la classe la plus représentée (la première en cas d'égalité), la
+     * référence la moins utilisée (la plus ancienne en cas d'égalité).
+     *
+     * <p>
+     * Le nombre de victimes de chaque classe ne dépend que des effectifs : il
+     * est fixé d'abord, puis une seule passe sur les lignes garde pour chaque
+     * classe ses victimes dans un tas borné, en O(n log count).
+     * </p>
+     *
+     * @return Les identifiants des références choisies.
+     */
+    private static Set<Long> leastUsed(Snapshot current, int count) {
+        int[] remaining = current.classCounts.clone();
+        PriorityQueue<Integer> largest = new PriorityQueue<>((a, b) -> remaining[a] != remaining[b]
+                ? Integer.compare(remaining[b], remaining[a])
+                : Integer.compare(a, b));
+        for (int c = 0; c < remaining.length; c++) {
+            largest.add(c);
+        }
+        int[] quotas = new int[remaining.length];
+        for (int i = 0; i < count; i++) {
+            int c = largest.poll();
+            quotas[c]++;
+            remaining[c]--;
+            largest.add(c);
+        }
+
+        // Par classe, tas des victimes retenues, la moins évinçable en tête :
+        // {utilisations, identifiant}, l'identifiant croissant avec l'ancienneté
+        Comparator<long[]> leastEvictable = (a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0])
+                : Long.compare(b[1], a[1]);
+        List<PriorityQueue<long[]>> selected = new ArrayList<>(quotas.length);
+        for (int quota : quotas) {
+            selected.add(quota > 0 ? new PriorityQueue<>(quota, leastEvictable) : null);
+        }
+        for (Segment segment : current.segments) {
+            for (int row = 0; row < segment.size; row++) {
+                int c = segment.labelIds[row];
+                PriorityQueue<long[]> heap = selected.get(c);
+                if (heap == null) {
+                    continue;
+                }
+                int uses = segment.uses.get(row);
+                if (heap.size() < quotas[c]) {
+                    heap.add(new long[] { uses, segment.ids[row] });
+                } else if (uses < heap.peek()[0]) {
+                    // À égalité, la référence déjà retenue est plus ancienne
+                    heap.poll();
+                    heap.add(new long[] { uses, segment.ids[row] });
+                }
+            }
+        }
+
+        Set<Long> victims = new HashSet<>();
+        for (PriorityQueue<long[]> heap : selected) {
+            if (heap != null) {
+                for (long[] victim : heap) {
+                    victims.add(victim[1]);
+                }
+            }
+        }
+        return victims;
+    }
+
+    /**
+     * État publié du modèle : segments, dictionnaire des classes, nombre de
+     * références et nombre de références par classe. Jamais modifié après
+     * publication.
+     */
+    private static final class Snapshot {
+        final Segment[] segments;
+        final String[] classNames;
+        final int size;
+        final int[] classCounts;
+
+        Snapshot(Segment[] segments, String[] classNames, int size, int[] classCounts) {
+            this.segments = segments;
+            this.classNames = classNames;
+            this.size = size;
+            this.classCounts = classCounts;
+        }
+    }
+
+    /**
+     * Bloc de références contiguës, dans l'ordre d'insertion. Seuls les
+     * compteurs d'utilisation changent après la création ; ils sont recopiés
+     * quand le segment est remplacé (un incrément concurrent à la copie peut
+     * être perdu, ce qui ne fait que retarder l'éviction).
+     */
+    private static final class Segment {
+        final int dimension;
+        final int size;
+        final double[] data;
+        final long[] ids;
+        final int[] labelIds;
+        final AtomicIntegerArray uses;
+
+        private Segment(int dimension, int size, double[] data, long[] ids, int[] labelIds,
+                AtomicIntegerArray uses) {
+            this.dimension = dimension;
+            this.size = size;
+            this.data = data;
+            this.ids = ids;
+            this.labelIds = labelIds;
+            this.uses = uses;
+        }
+
+        static Segment empty(int dimension) {
+            return new Segment(dimension, 0, new double[0], new long[0], new int[0], new AtomicIntegerArray(0));
+        }
+
+        /**
+         * Retourne une copie du segment suivie de {@code count} lignes
+         * consécutives de {@code source}, d'identifiants consécutifs à partir de
+         * {@code firstId}.
+         */
+        Segment append(long firstId, double[] source, int offset, int[] sourceLabelIds, int labelOffset,
+                int count) {
+            int newSize = size + count;
+            double[] newData = Arrays.copyOf(data, newSize * dimension);
+            System.arraycopy(source, offset, newData, size * dimension, count * dimension);
+            long[] newIds = Arrays.copyOf(ids, newSize);
+            for (int i = 0; i < count; i++) {
+                newIds[size + i] = firstId + i;
+            }
+            int[] newLabelIds = Arrays.copyOf(labelIds, newSize);
+            System.arraycopy(sourceLabelIds, labelOffset, newLabelIds, size, count);
+            AtomicIntegerArray newUses = new AtomicIntegerArray(newSize);
+            for (int row = 0; row < size; row++) {
+                newUses.set(row, uses.get(row));
+            }
+            return new Segment(dimension, newSize, newData, newIds, newLabelIds, newUses);
+        }
+
+        /**
+         * Retourne la concaténation de ce segment et de {@code next}.
+         */
+        Segment concat(Segment next) {
+            int newSize = size + next.size;
+            double[] newData = Arrays.copyOf(data, newSize * dimension);
+            System.arraycopy(next.data, 0, newData, size * dimension, next.size * dimension);
+            long[] newIds = Arrays.copyOf(ids, newSize);
+            System.arraycopy(next.ids, 0, newIds, size, next.size);
+            int[] newLabelIds = Arrays.copyOf(labelIds, newSize);
+            System.arraycopy(next.labelIds, 0, newLabelIds, size, next.size);
+            AtomicIntegerArray newUses = new AtomicIntegerArray(newSize);
+            for (int row = 0; row < size; row++) {
+                newUses.set(row, uses.get(row));
+            }
+            for (int row = 0; row < next.size; row++) {
+                newUses.set(size + row, next.uses.get(row));
+            }
+            return new Segment(dimension, newSize, newData, newIds, newLabelIds, newUses);
+        }
+
+        Segment without(int removed) {
+            boolean[] drop = new boolean[size];
+            drop[removed] = true;
+            return without(drop, size - 1);
+        }
+
+        /**
+         * Copie des lignes non marquées dans {@code drop}.
+         */
+        private Segment without(boolean[] drop, int kept) {
+            double[] newData = new double[kept * dimension];
+            long[] newIds = new long[kept];
+            int[] newLabelIds = new int[kept];
+            AtomicIntegerArray newUses = new AtomicIntegerArray(kept);
+            for (int row = 0, target = 0; row < size; row++) {
+                if (drop[row]) {
+                    continue;
+                }
+                System.arraycopy(data, row * dimension, newData, target * dimension, dimension);
+                newIds[target] = ids[row];
+                newLabelIds[target] = labelIds[row];
+                newUses.set(target, uses.get(row));
+                target++;
+            }
+            return new Segment(dimension, kept, newData, newIds, newLabelIds, newUses);
+        }
+
+        /**
+         * Retourne le segment privé des références dont l'identifiant est dans
+         * {@code removed} (le segment lui-même s'il n'en contient aucune), en
+         * décomptant leurs classes de {@code classCounts}.
+         */
+        Segment without(Set<Long> removed, int[] classCounts) {
+            boolean[] drop = new boolean[size];
+            int kept = size;
+            for (int row = 0; row < size; row++) {
+                if (removed.contains(ids[row])) {
+                    drop[row] = true;
+                    classCounts[labelIds[row]]--;
+                    kept--;
+                }
+            }
+            return kept == size ? this : without(drop, kept);
+        }
+
+        /**
+         * @return La ligne de la référence, ou -1 si elle n'est pas dans ce
+         *         segment.
+         */
+        int find(long id) {
+            // Les identifiants croissent avec l'ordre d'insertion
+            int row = Arrays.binarySearch(ids, 0, size, id);
+            return row >= 0 ? row : -1;
+        }
+    }
+}
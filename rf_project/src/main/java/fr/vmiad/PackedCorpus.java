@@ -0,0 +1,570 @@
+package fr.vmiad;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Corpus de descripteurs d'une famille (Zernike, GFD...) regroupé dans un seul
+ * fichier binaire, projeté en mémoire à la lecture.
+ *
+ * <p>
+ * Le fichier (octets en petit-boutiste) contient, dans l'ordre :
+ * </p>
+ * <ul>
+ * <li>un en-tête fixe de {@value #HEADER_SIZE} octets : nombre magique,
+ * version, type des valeurs ({@link Dtype}), nombre de lignes, dimension,
+ * nombre de classes, puis la position de chaque section et la taille
+ * totale ;</li>
+ * <li>le dictionnaire des classes (longueur puis octets UTF-8 de chaque
+ * nom) ;</li>
+ * <li>l'indice de classe de chaque ligne ({@code int[rows]}) ;</li>
+ * <li>les positions des noms de fichiers ({@code long[rows + 1]}) puis leurs
+ * octets UTF-8 ;</li>
+ * <li>les valeurs, ligne par ligne, alignées sur 8 octets.</li>
+ * </ul>
+ *
+ * <p>
+ * À l'ouverture, seul le dictionnaire des classes est décodé ; les indices de
+ * classe et les positions des noms sont seulement vérifiés. Indices, noms et
+ * valeurs sont lus directement dans la projection, et {@link #features()} en
+ * donne une vue sans copie. {@link #toMatrix()} copie les valeurs en bloc dans
+ * une {@link FeatureMatrix}.
+ * </p>
+ *
+ * <p>
+ * Le fichier est projeté d'un seul tenant : sa taille est limitée à
+ * {@value #MAX_FILE_SIZE} octets (2 Gio), soit par exemple environ 12 millions
+ * de descripteurs Zernike de 18 valeurs en {@link Dtype#FLOAT64} et 22
+ * millions en {@link Dtype#FLOAT32}. {@link #write} et {@link #convert} refusent un corpus
+ * plus gros, {@code convert} dès le premier fichier lu.
+ * </p>
+ */
+public class PackedCorpus {
+
+    static final int MAGIC = 0x52465043; // "RFPC"
+    static final int VERSION = 1; // Version du format
+    static final int HEADER_SIZE = 64; // Taille de l'en-tête fixe
+    static final long MAX_FILE_SIZE = Integer.MAX_VALUE; // Taille maximale projetable d'un seul tenant
+    private static final int WRITE_BUFFER = 1 << 16; // Tampon d'écriture des valeurs
+
+    /**
+     * Type des valeurs stockées.
+     */
+    public enum Dtype {
+        /** Doubles (8 octets), sans perte. */
+        FLOAT64(8),
+        /** Flottants (4 octets) : fichier deux fois plus petit, précision réduite. */
+        FLOAT32(4);
+
+        final int size; // Taille d'une valeur en octets
+
+        Dtype(int size) {
+            this.size = size;
+        }
+    }
+
+    private final Path path; // Fichier projeté
+    private final int rows; // Nombre de descripteurs
+    private final int cols; // Dimension des descripteurs
+    private final Dtype dtype; // Type des valeurs
+    private final String[] classNames; // Dictionnaire des classes
+    private final IntBuffer labelIds; // Indice de classe de chaque ligne
+    private final LongBuffer nameOffsets; // Position du nom de chaque ligne (rows + 1)
+    private final ByteBuffer names; // Octets UTF-8 des noms
+    private final ByteBuffer values; // Bloc des valeurs
+
+    private PackedCorpus(Path path, int rows, int cols, Dtype dtype, String[] classNames, IntBuffer labelIds,
+            LongBuffer nameOffsets, ByteBuffer names, ByteBuffer values) {
+        this.path = path;
+        this.rows = rows;
+        this.cols = cols;
+        this.dtype = dtype;
+        this.classNames = classNames;
+        this.labelIds = labelIds;
+        this.nameOffsets = nameOffsets;
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * Ouvre un corpus en le projetant en mémoire.
+     *
+     * @param path Le chemin du fichier.
+     * @return Le corpus.
+     * @throws IOException Si le fichier est illisible, d'une autre version,
+     *                     tronqué, incohérent ou plus gros que
+     *                     {@value #MAX_FILE_SIZE} octets.
+     */
+    public static PackedCorpus open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Corpus tronqué : " + path);
+            }
+            if (fileSize > MAX_FILE_SIZE) {
+                throw new IOException("Corpus de " + fileSize + " octets, au-delà de la limite de " + MAX_FILE_SIZE
+                        + " : " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Ce fichier n'est pas un corpus de descripteurs : " + path);
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Version de corpus " + version + " incompatible (attendue : " + VERSION
+                        + ") : " + path);
+            }
+            int dtypeIndex = buffer.getInt(8);
+            int rows = buffer.getInt(12);
+            int cols = buffer.getInt(16);
+            int classCount = buffer.getInt(20);
+            long labelIdsOffset = buffer.getLong(24);
+            long namesOffset = buffer.getLong(32);
+            long valuesOffset = buffer.getLong(40);
+            long totalSize = buffer.getLong(48);
+            if (dtypeIndex < 0 || dtypeIndex >= Dtype.values().length || rows < 0 || cols < 0 || classCount < 0) {
+                throw new IOException("En-tête de corpus invalide : " + path);
+            }
+            Dtype dtype = Dtype.values()[dtypeIndex];
+            long nameOffsetsSize = 8L * (rows + 1);
+            if (totalSize != fileSize || labelIdsOffset < HEADER_SIZE
+                    || namesOffset != labelIdsOffset + 4L * rows
+                    || valuesOffset + (long) rows * cols * dtype.size != fileSize
+                    || namesOffset + nameOffsetsSize > valuesOffset) {
+                throw new IOException("Corpus tronqué ou incohérent : " + path);
+            }
+
+            // Dictionnaire des classes, seule section décodée à l'ouverture
+            String[] classNames = new String[classCount];
+            int position = HEADER_SIZE;
+            for (int c = 0; c < classCount; c++) {
+                int length = buffer.getInt(position);
+                if (length < 0 || position + 4L + length > labelIdsOffset) {
+                    throw new IOException("Dictionnaire des classes invalide : " + path);
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(position + 4, bytes);
+                classNames[c] = new String(bytes, StandardCharsets.UTF_8);
+                position += 4 + length;
+            }
+
+            IntBuffer labelIds = section(buffer, labelIdsOffset, 4L * rows).asIntBuffer();
+            for (int row = 0; row < rows; row++) {
+                int labelId = labelIds.get(row);
+                if (labelId < 0 || labelId >= classCount) {
+                    throw new IOException("Indice de classe " + labelId + " invalide à la ligne " + row + " : " + path);
+                }
+            }
+            LongBuffer nameOffsets = section(buffer, namesOffset, nameOffsetsSize).asLongBuffer();
+            long namesStart = namesOffset + nameOffsetsSize;
+            ByteBuffer names = section(buffer, namesStart, valuesOffset - namesStart);
+            // Positions croissantes, de 0 à au plus la taille de la section des noms
+            long previous = 0;
+            for (int row = 0; row <= rows; row++) {
+                long offset = nameOffsets.get(row);
+                if (row == 0 ? offset != 0 : offset < previous || offset > names.capacity()) {
+                    throw new IOException("Position de nom invalide à la ligne " + row + " : " + path);
+                }
+                previous = offset;
+            }
+            ByteBuffer values = section(buffer, valuesOffset, (long) rows * cols * dtype.size);
+            return new PackedCorpus(path, rows, cols, dtype, classNames, labelIds, nameOffsets, names, values);
+        }
+    }
+
+    /**
+     * Vue petit-boutiste d'une section de la projection.
+     */
+    private static ByteBuffer section(ByteBuffer buffer, long offset, long length) {
+        return buffer.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return Le nombre de descripteurs.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return La dimension des descripteurs.
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * @return Le type des valeurs stockées.
+     */
+    public Dtype dtype() {
+        return dtype;
+    }
+
+    /**
+     * @return Le dictionnaire des classes.
+     */
+    public String[] classNames() {
+        return classNames;
+    }
+
+    /**
+     * @param row L'indice de la ligne.
+     * @return L'indice de classe de la ligne.
+     */
+    public int getLabelId(int row) {
+        return labelIds.get(row);
+    }
+
+    /**
+     * @param row L'indice de la ligne.
+     * @return Le label de la ligne.
+     */
+    public String getLabel(int row) {
+        return classNames[labelIds.get(row)];
+    }
+
+    /**
+     * @param row L'indice de la ligne.
+     * @return Le nom du fichier d'origine de la ligne (décodé à la demande).
+     */
+    public String getFileName(int row) {
+        int start = (int) nameOffsets.get(row);
+        byte[] bytes = new byte[(int) nameOffsets.get(row + 1) - start];
+        names.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Vue sans copie des valeurs, ligne par ligne.
+     *
+     * @return Les valeurs (lecture seule).
+     * @throws IllegalStateException Si les valeurs sont stockées en
+     *                               {@link Dtype#FLOAT32}.
+     */
+    public DoubleBuffer features() {
+        if (dtype != Dtype.FLOAT64) {
+            throw new IllegalStateException("Valeurs stockées en " + dtype + " : utiliser floatFeatures()");
+        }
+        return values.asDoubleBuffer();
+    }
+
+    /**
+     * Vue sans copie des valeurs stockées en {@link Dtype#FLOAT32}.
+     *
+     * @return Les valeurs (lecture seule).
+     * @throws IllegalStateException Si les valeurs sont stockées en
+     *                               {@link Dtype#FLOAT64}.
+     */
+    public FloatBuffer floatFeatures() {
+        if (dtype != Dtype.FLOAT32) {
+            throw new IllegalStateException("Valeurs stockées en " + dtype + " : utiliser features()");
+        }
+        return values.asFloatBuffer();
+    }
+
+    /**
+     * Copie les valeurs d'une ligne dans un tableau.
+     *
+     * @param row    L'indice de la ligne.
+     * @param target Le tableau à remplir.
+     * @param offset L'indice de la première valeur dans le tableau.
+     */
+    public void readRow(int row, double[] target, int offset) {
+        readRows(row, 1, target, offset);
+    }
+
+    /**
+     * Copie les valeurs de lignes consécutives dans un tableau.
+     */
+    private void readRows(int row, int count, double[] target, int offset) {
+        int length = count * cols;
+        if (dtype == Dtype.FLOAT64) {
+            values.asDoubleBuffer().get(row * cols, target, offset, length);
+        } else {
+            FloatBuffer floats = values.asFloatBuffer();
+            for (int i = 0; i < length; i++) {
+                target[offset + i] = floats.get(row * cols + i);
+            }
+        }
+    }
+
+    /**
+     * Copie le corpus dans une matrice de caractéristiques.
+     *
+     * @return La matrice (valeurs copiées en bloc).
+     */
+    public FeatureMatrix toMatrix() {
+        double[] data = new double[rows * cols];
+        readRows(0, rows, data, 0);
+        int[] ids = new int[rows];
+        labelIds.get(0, ids);
+        String[] fileNames = new String[rows];
+        for (int row = 0; row < rows; row++) {
+            fileNames[row] = getFileName(row);
+        }
+        return new FeatureMatrix(rows, cols, data, fileNames, ids, classNames.clone());
+    }
+
+    @Override
+    public String toString() {
+        return "PackedCorpus[" + path + ", " + rows + " x " + cols + ", " + dtype + "]";
+    }
+
+    /**
+     * Enregistre une matrice de caractéristiques dans un corpus.
+     *
+     * @param matrix La matrice.
+     * @param path   Le chemin du fichier.
+     * @param dtype  Le type des valeurs stockées.
+     * @throws IOException Si l'écriture échoue.
+     */
+    public static void write(FeatureMatrix matrix, Path path, Dtype dtype) throws IOException {
+        double[] data = matrix.data();
+        writeFile(path, matrix.rows(), matrix.cols(), dtype, matrix.classNames(), matrix.labelIds(),
+                matrix.fileNames(), channel -> {
+                    ValueWriter writer = new ValueWriter(channel, dtype);
+                    for (int row = 0; row < matrix.rows(); row++) {
+                        writer.write(data, matrix.offset(row), matrix.cols());
+                    }
+                    writer.flush();
+                });
+    }
+
+    /**
+     * Convertit un répertoire de fichiers descripteurs en corpus. Les fichiers
+     * sont lus un à un dans l'ordre de leurs noms, les labels sont déduits des
+     * noms ({@link ClassName#getLabelFromFile(String)}) et les valeurs sont
+     * écrites au fil de la lecture dans un fichier temporaire : seuls les noms
+     * et les labels restent en mémoire.
+     *
+     * @param directory Le répertoire des fichiers descripteurs.
+     * @param extension L'extension des fichiers à lire.
+     * @param output    Le fichier à créer.
+     * @param dtype     Le type des valeurs stockées.
+     * @return Le nombre de descripteurs écrits.
+     * @throws IOException Si un fichier est illisible, mal formé ou de
+     *                     dimension différente des autres, ou si le corpus
+     *                     dépasserait {@value #MAX_FILE_SIZE} octets.
+     */
+    public static int convert(Path directory, String extension, Path output, Dtype dtype) throws IOException {
+        List<File> files = DescReader.listDescFiles(directory.toString(), extension);
+        files.sort(Comparator.comparing(File::getName));
+
+        // Taille minimale des métadonnées (sans le dictionnaire des classes),
+        // pour refuser un corpus trop gros dès que la dimension est connue
+        int rows = files.size();
+        long metadataSize = HEADER_SIZE + 4L * rows + 8L * (rows + 1);
+        for (File file : files) {
+            metadataSize += file.getName().getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        Path absolute = output.toAbsolutePath();
+        Path valuesFile = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".values");
+        try {
+            int cols = -1;
+            String[] fileNames = new String[rows];
+            int[] labelIds = new int[rows];
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> classNames = new ArrayList<>();
+            DescParser parser = new DescParser();
+            try (FileChannel channel = FileChannel.open(valuesFile, StandardOpenOption.WRITE)) {
+                ValueWriter writer = new ValueWriter(channel, dtype);
+                for (int row = 0; row < rows; row++) {
+                    File file = files.get(row);
+                    double[] features;
+                    try {
+                        features = parser.parse(file.toPath());
+                    } catch (NumberFormatException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                    if (cols < 0) {
+                        cols = features.length;
+                        checkSize(metadataSize + (long) rows * cols * dtype.size);
+                    } else if (features.length != cols) {
+                        throw new IOException("Dimension " + features.length + " au lieu de " + cols + " : " + file);
+                    }
+                    writer.write(features, 0, cols);
+                    fileNames[row] = file.getName();
+                    labelIds[row] = dictionary.computeIfAbsent(ClassName.getLabelFromFile(file.getName()), label -> {
+                        classNames.add(label);
+                        return classNames.size() - 1;
+                    });
+                }
+                writer.flush();
+            }
+
+            writeFile(output, rows, Math.max(cols, 0), dtype, classNames.toArray(new String[0]), labelIds,
+                    fileNames, channel -> {
+                        try (FileChannel source = FileChannel.open(valuesFile, StandardOpenOption.READ)) {
+                            long size = source.size();
+                            for (long done = 0; done < size;) {
+                                done += source.transferTo(done, size - done, channel);
+                            }
+                        }
+                    });
+            return rows;
+        } finally {
+            Files.deleteIfExists(valuesFile);
+        }
+    }
+
+    /**
+     * Vérifie qu'un corpus de cette taille peut être projeté d'un seul tenant.
+     */
+    private static void checkSize(long totalSize) throws IOException {
+        if (totalSize > MAX_FILE_SIZE) {
+            throw new IOException("Corpus trop volumineux pour un seul fichier projeté : " + totalSize
+                    + " octets (au plus " + MAX_FILE_SIZE + ")");
+        }
+    }
+
+    /**
+     * Écriture du bloc des valeurs, après les métadonnées.
+     */
+    private interface ValuesSection {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Écrit un corpus complet. Le fichier est d'abord écrit à côté puis
+     * renommé.
+     */
+    private static void writeFile(Path path, int rows, int cols, Dtype dtype, String[] classNames, int[] labelIds,
+            String[] fileNames, ValuesSection values) throws IOException {
+        byte[][] encodedClasses = new byte[classNames.length][];
+        long dictionarySize = 0;
+        for (int c = 0; c < classNames.length; c++) {
+            encodedClasses[c] = String.valueOf(classNames[c]).getBytes(StandardCharsets.UTF_8);
+            dictionarySize += 4 + encodedClasses[c].length;
+        }
+        byte[][] encodedNames = new byte[rows][];
+        long namesSize = 0;
+        for (int row = 0; row < rows; row++) {
+            encodedNames[row] = fileNames[row] == null ? new byte[0]
+                    : fileNames[row].getBytes(StandardCharsets.UTF_8);
+            namesSize += encodedNames[row].length;
+        }
+
+        long labelIdsOffset = HEADER_SIZE + dictionarySize;
+        long namesOffset = labelIdsOffset + 4L * rows;
+        long namesEnd = namesOffset + 8L * (rows + 1) + namesSize;
+        long valuesOffset = (namesEnd + 7) & ~7L; // Alignement des valeurs sur 8 octets
+        long totalSize = valuesOffset + (long) rows * cols * dtype.size;
+        checkSize(totalSize);
+
+        ByteBuffer metadata = ByteBuffer.allocate((int) valuesOffset).order(ByteOrder.LITTLE_ENDIAN);
+        metadata.putInt(MAGIC).putInt(VERSION).putInt(dtype.ordinal()).putInt(rows).putInt(cols)
+                .putInt(classNames.length).putLong(labelIdsOffset).putLong(namesOffset).putLong(valuesOffset)
+                .putLong(totalSize);
+        metadata.position(HEADER_SIZE);
+        for (byte[] encoded : encodedClasses) {
+            metadata.putInt(encoded.length).put(encoded);
+        }
+        for (int row = 0; row < rows; row++) {
+            metadata.putInt(labelIds[row]);
+        }
+        long nameOffset = 0;
+        for (int row = 0; row < rows; row++) {
+            metadata.putLong(nameOffset);
+            nameOffset += encodedNames[row].length;
+        }
+        metadata.putLong(nameOffset);
+        for (byte[] encoded : encodedNames) {
+            metadata.put(encoded);
+        }
+        metadata.position(0).limit((int) valuesOffset);
+
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (metadata.hasRemaining()) {
+                    channel.write(metadata);
+                }
+                values.writeTo(channel);
+                if (channel.size() != totalSize) {
+                    throw new IOException("Taille du corpus incohérente : " + channel.size() + " au lieu de "
+                            + totalSize);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Écriture des valeurs dans le type choisi, par un tampon direct.
+     */
+    private static final class ValueWriter {
+        private final FileChannel channel;
+        private final Dtype dtype;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+
+        ValueWriter(FileChannel channel, Dtype dtype) {
+            this.channel = channel;
+            this.dtype = dtype;
+        }
+
+        void write(double[] source, int offset, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                if (buffer.remaining() < dtype.size) {
+                    flush();
+                }
+                if (dtype == Dtype.FLOAT64) {
+                    buffer.putDouble(source[offset + i]);
+                } else {
+                    buffer.putFloat((float) source[offset + i]);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Convertisseur en ligne de commande.
+     *
+     * @param args Le répertoire des descripteurs, leur extension, le fichier
+     *             à créer et éventuellement {@code float32}.
+     * @throws IOException Si la conversion échoue.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage : PackedCorpus <répertoire> <extension> <sortie> [float32]");
+            return;
+        }
+        Dtype dtype = args.length > 3 && args[3].equalsIgnoreCase("float32") ? Dtype.FLOAT32 : Dtype.FLOAT64;
+        long start = System.nanoTime();
+        int rows = convert(Paths.get(args[0]), args[1], Paths.get(args[2]), dtype);
+        System.out.println(rows + " descripteurs écrits dans " + args[2] + " en "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,145 @@
+package fr.vmiad;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Image en niveaux de gris au format PGM binaire (P5), telle que celles du
+ * répertoire {@code =Corpus/pgm}.
+ *
+ * <p>
+ * Le fichier est lu d'un bloc ; l'en-tête (commentaires compris) est analysé
+ * directement sur les octets et les pixels sont conservés tels quels, un
+ * octet par pixel, ligne par ligne. Seules les images de profondeur 8 bits
+ * (valeur maximale inférieure à 256) sont acceptées.
+ * </p>
+ */
+public class PgmImage {
+
+    private final int width; // Largeur en pixels
+    private final int height; // Hauteur en pixels
+    private final int maxValue; // Valeur maximale d'un pixel
+    private final byte[] pixels; // Pixels, ligne par ligne (non signés)
+
+    /**
+     * Constructeur.
+     *
+     * @param width    La largeur en pixels.
+     * @param height   La hauteur en pixels.
+     * @param maxValue La valeur maximale d'un pixel (au plus 255).
+     * @param pixels   Les pixels ligne par ligne (tableau non copié).
+     */
+    public PgmImage(int width, int height, int maxValue, byte[] pixels) {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException(
+                    pixels.length + " pixels pour une image " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.maxValue = maxValue;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Lit une image PGM binaire (P5).
+     *
+     * @param file Le fichier à lire.
+     * @return L'image.
+     * @throws IOException Si le fichier est illisible, n'est pas un PGM P5 de
+     *                     profondeur 8 bits ou est tronqué.
+     */
+    public static PgmImage read(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < 2 || bytes[0] != 'P' || bytes[1] != '5') {
+            throw new IOException(file + " : pas une image PGM binaire (P5)");
+        }
+        int[] position = { 2 };
+        int width = readHeaderInt(bytes, position, file);
+        int height = readHeaderInt(bytes, position, file);
+        int maxValue = readHeaderInt(bytes, position, file);
+        if (width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 255) {
+            throw new IOException(file + " : en-tête non supporté (" + width + "x" + height + ", max " + maxValue + ")");
+        }
+        // Un seul blanc sépare l'en-tête des pixels
+        int start = position[0] + 1;
+        long size = (long) width * height;
+        if (start + size > bytes.length) {
+            throw new IOException(file + " : fichier tronqué (" + (bytes.length - start) + " pixels sur " + size + ")");
+        }
+        return new PgmImage(width, height, maxValue, Arrays.copyOfRange(bytes, start, start + (int) size));
+    }
+
+    /**
+     * Lit un entier de l'en-tête à partir de {@code position[0]}, en sautant
+     * blancs et commentaires, et s'arrête sur le blanc qui le suit.
+     */
+    private static int readHeaderInt(byte[] bytes, int[] position, Path file) throws IOException {
+        int p = position[0];
+        while (p < bytes.length) {
+            if (bytes[p] == '#') {
+                while (p < bytes.length && bytes[p] != '\n') {
+                    p++;
+                }
+            } else if ((bytes[p] & 0xFF) <= ' ') {
+                p++;
+            } else {
+                break;
+            }
+        }
+        int value = 0;
+        int digits = 0;
+        while (p < bytes.length && bytes[p] >= '0' && bytes[p] <= '9') {
+            if (value > (Integer.MAX_VALUE - 9) / 10) {
+                throw new IOException(file + " : en-tête invalide");
+            }
+            value = value * 10 + (bytes[p] - '0');
+            digits++;
+            p++;
+        }
+        if (digits == 0 || p >= bytes.length || (bytes[p] & 0xFF) > ' ') {
+            throw new IOException(file + " : en-tête invalide");
+        }
+        position[0] = p;
+        return value;
+    }
+
+    /**
+     * @return La largeur en pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return La hauteur en pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return La valeur maximale d'un pixel.
+     */
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @param x La colonne.
+     * @param y La ligne.
+     * @return Le niveau de gris du pixel.
+     */
+    public int getGray(int x, int y) {
+        return pixels[y * width + x] & 0xFF;
+    }
+
+    /**
+     * @return Les pixels ligne par ligne (tableau non copié, valeurs non
+     *         signées : {@code pixel & 0xFF}).
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+}
@@ -0,0 +1,187 @@
+package fr.vmiad;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache LRU des résultats de prédiction, placé devant {@link KNN} ou
+ * {@link OnlineKNN}.
+ *
+ * <p>
+ * La clé est le vecteur de caractéristiques (déjà normalisé) : son empreinte
+ * sert au hachage et le vecteur complet est comparé à l'identique, de sorte
+ * que deux vecteurs différents ne partagent jamais un résultat. La valeur est
+ * le nombre de voisins par label, dont se déduisent à la fois le label
+ * prédit et les scores. Le cache est borné en nombre d'entrées et/ou en
+ * poids estimé (octets) ; l'entrée la moins récemment utilisée est évincée.
+ * </p>
+ *
+ * <p>
+ * {@link #invalidate()} vide le cache ; un résultat calculé avant une
+ * invalidation n'y est jamais ajouté après elle.
+ * </p>
+ */
+public class PredictionCache {
+
+    private static final long ENTRY_OVERHEAD = 64; // Poids fixe estimé d'une entrée (octets)
+    private static final long LABEL_WEIGHT = 48; // Poids estimé d'un label dans une valeur (octets)
+
+    private final int maxEntries; // Nombre maximal d'entrées (0 : illimité)
+    private final long maxWeight; // Poids maximal (0 : illimité)
+    private final LinkedHashMap<Key, Map<String, Integer>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight; // Poids courant
+    private long generation; // Incrémenté à chaque invalidation
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructeur d'un cache borné en nombre d'entrées.
+     *
+     * @param maxEntries Le nombre maximal d'entrées.
+     */
+    public PredictionCache(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    /**
+     * Constructeur du cache.
+     *
+     * @param maxEntries Le nombre maximal d'entrées (0 pour illimité).
+     * @param maxWeight  Le poids maximal estimé en octets (0 pour illimité).
+     * @throws IllegalArgumentException Si aucune borne n'est donnée ou si une
+     *                                  borne est négative.
+     */
+    public PredictionCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 0 || maxWeight < 0 || (maxEntries == 0 && maxWeight == 0)) {
+            throw new IllegalArgumentException("Bornes du cache invalides : maxEntries=" + maxEntries
+                    + ", maxWeight=" + maxWeight);
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Retourne le nombre de voisins par label d'un vecteur, calculé au besoin.
+     *
+     * @param features Les caractéristiques du point.
+     * @param compute  Le calcul à effectuer en cas d'absence.
+     * @return Le nombre de voisins par label (non modifiable).
+     */
+    Map<String, Integer> labelCounts(double[] features, Function<double[], Map<String, Integer>> compute) {
+        Key key = new Key(features.clone());
+        long startGeneration;
+        synchronized (this) {
+            Map<String, Integer> cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            startGeneration = generation;
+        }
+        misses.increment();
+
+        // Calcul hors verrou : deux requêtes identiques simultanées calculent
+        // chacune le résultat
+        Map<String, Integer> labelCounts = Collections.unmodifiableMap(compute.apply(features));
+        synchronized (this) {
+            if (generation == startGeneration && !entries.containsKey(key)) {
+                entries.put(key, labelCounts);
+                weight += weightOf(key, labelCounts);
+                evict();
+            }
+        }
+        return labelCounts;
+    }
+
+    /**
+     * Évince les entrées les moins récemment utilisées tant qu'une borne est
+     * dépassée.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Map<String, Integer>>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext() && ((maxEntries > 0 && entries.size() > maxEntries)
+                || (maxWeight > 0 && weight > maxWeight))) {
+            Map.Entry<Key, Map<String, Integer>> entry = eldest.next();
+            weight -= weightOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    private static long weightOf(Key key, Map<String, Integer> labelCounts) {
+        return ENTRY_OVERHEAD + 8L * key.features.length + LABEL_WEIGHT * labelCounts.size();
+    }
+
+    /**
+     * Vide le cache, à appeler quand les données d'entraînement changent.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        weight = 0;
+        generation++;
+    }
+
+    /**
+     * @return Le nombre d'entrées du cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Le poids estimé du cache (en octets).
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * @return Le nombre de prédictions servies par le cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Le nombre de prédictions calculées.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return La proportion de prédictions servies par le cache.
+     */
+    public double hitRate() {
+        long total = getHits() + getMisses();
+        return total == 0 ? 0.0 : getHits() / (double) total;
+    }
+
+    /**
+     * Clé du cache : le vecteur copié et son empreinte.
+     */
+    private static final class Key {
+        final double[] features;
+        final int hash;
+
+        Key(double[] features) {
+            this.features = features;
+            this.hash = Arrays.hashCode(features);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && hash == ((Key) other).hash
+                    && Arrays.equals(features, ((Key) other).features);
+        }
+    }
+}
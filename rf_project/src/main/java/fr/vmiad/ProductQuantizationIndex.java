@@ -0,0 +1,236 @@
+package fr.vmiad;
+
+import java.io.IOException;
+
+/**
+ * Index compressé par quantification produit (product quantization).
+ *
+ * <p>
+ * Les dimensions sont découpées en {@code subspaces} blocs contigus. Pour
+ * chaque bloc, un dictionnaire de {@code centroids} centroïdes (au plus 256)
+ * est appris avec {@link KMeans} sur les sous-vecteurs d'entraînement, et
+ * chaque ligne est remplacée par l'indice du centroïde le plus proche, codé
+ * sur un octet. Une ligne de dimension d occupe donc {@code subspaces} octets
+ * au lieu de {@code 8 * d}.
+ * </p>
+ *
+ * <p>
+ * À la requête, une table des distances entre chaque sous-vecteur de la
+ * requête et chaque centroïde est calculée une fois (distance asymétrique) ;
+ * la distance approchée d'une ligne est alors une somme de
+ * {@code subspaces} lectures dans cette table. Si {@code rerank > 0}, les
+ * {@code rerank} meilleurs candidats approchés sont reclassés avec la
+ * distance exacte : les données d'origine sont alors conservées.
+ * </p>
+ */
+public class ProductQuantizationIndex implements NeighborIndex {
+
+    public static final int MAX_CENTROIDS = 256; // Un code tient sur un octet
+
+    private final int rows; // Nombre de lignes indexées
+    private final int subspaces; // Nombre de sous-espaces
+    private final int centroids; // Nombre de centroïdes par sous-espace
+    private final int[] subspaceStart; // Première dimension de chaque sous-espace (+ fin)
+    private final double[] codebooks; // Centroïdes de tous les sous-espaces, à la suite
+    private final int[] codebookOffset; // Début du dictionnaire de chaque sous-espace
+    private final byte[] codes; // Code de chaque ligne (rows * subspaces)
+    private final int rerank; // Nombre de candidats reclassés exactement
+    private final FeatureMatrix exactData; // Données d'origine (null sans reclassement)
+
+    /**
+     * Construit l'index sans reclassement : les données d'origine ne sont pas
+     * conservées.
+     *
+     * @param data      Les données d'entraînement.
+     * @param subspaces Le nombre de sous-espaces (au plus la dimension).
+     * @param centroids Le nombre de centroïdes par sous-espace (au plus 256).
+     */
+    public ProductQuantizationIndex(FeatureMatrix data, int subspaces, int centroids) {
+        this(data, subspaces, centroids, 25, 0);
+    }
+
+    /**
+     * Construit l'index.
+     *
+     * @param data          Les données d'entraînement.
+     * @param subspaces     Le nombre de sous-espaces (au plus la dimension).
+     * @param centroids     Le nombre de centroïdes par sous-espace (au plus 256).
+     * @param maxIterations Le nombre maximum d'itérations de K-Means.
+     * @param rerank        Le nombre de candidats approchés reclassés avec la
+     *                      distance exacte (0 pour ne pas reclasser).
+     * @throws IllegalArgumentException Si un paramètre est invalide.
+     */
+    public ProductQuantizationIndex(FeatureMatrix data, int subspaces, int centroids, int maxIterations,
+            int rerank) {
+        if (subspaces < 1 || subspaces > Math.max(1, data.cols()) || centroids < 1 || centroids > MAX_CENTROIDS
+                || rerank < 0) {
+            throw new IllegalArgumentException("Paramètres de quantification invalides : subspaces=" + subspaces
+                    + ", centroids=" + centroids + ", rerank=" + rerank);
+        }
+        this.rows = data.rows();
+        this.subspaces = subspaces;
+        this.centroids = Math.max(1, Math.min(centroids, rows));
+        this.rerank = rerank;
+        this.exactData = rerank > 0 ? data : null;
+
+        // Découpage des dimensions en blocs de tailles aussi égales que possible
+        this.subspaceStart = new int[subspaces + 1];
+        for (int s = 0; s <= subspaces; s++) {
+            subspaceStart[s] = s * data.cols() / subspaces;
+        }
+        this.codebookOffset = new int[subspaces + 1];
+        for (int s = 0; s < subspaces; s++) {
+            codebookOffset[s + 1] = codebookOffset[s] + this.centroids * subspaceWidth(s);
+        }
+        this.codebooks = new double[codebookOffset[subspaces]];
+        this.codes = new byte[rows * subspaces];
+
+        if (rows > 0) {
+            for (int s = 0; s < subspaces; s++) {
+                trainSubspace(data, s, maxIterations);
+            }
+        }
+    }
+
+    /**
+     * Constructeur utilisé au rechargement d'un modèle : les dictionnaires et
+     * les codes sont déjà calculés.
+     */
+    private ProductQuantizationIndex(int rows, int subspaces, int centroids, int[] subspaceStart,
+            double[] codebooks, int[] codebookOffset, byte[] codes, int rerank, FeatureMatrix exactData) {
+        this.rows = rows;
+        this.subspaces = subspaces;
+        this.centroids = centroids;
+        this.subspaceStart = subspaceStart;
+        this.codebooks = codebooks;
+        this.codebookOffset = codebookOffset;
+        this.codes = codes;
+        this.rerank = rerank;
+        this.exactData = exactData;
+    }
+
+    /**
+     * Écrit l'index dans un fichier de modèle (voir {@link KNNModelFile}). Les
+     * données d'origine ne sont enregistrées qu'en cas de reclassement.
+     */
+    void writeTo(KNNModelFile.Output out) throws IOException {
+        out.writeInt(rows);
+        out.writeInt(subspaces);
+        out.writeInt(centroids);
+        out.writeInt(rerank);
+        out.writeInts(subspaceStart);
+        out.writeInts(codebookOffset);
+        out.writeDoubles(codebooks);
+        out.writeBytes(codes);
+        if (exactData != null) {
+            KNNModelFile.writeMatrix(exactData, out);
+        }
+    }
+
+    /**
+     * Relit un index écrit par {@link #writeTo}.
+     */
+    static ProductQuantizationIndex readFrom(KNNModelFile.Input in, String[] classNames, int[] labelIds)
+            throws IOException {
+        int rows = in.readInt();
+        int subspaces = in.readInt();
+        int centroids = in.readInt();
+        int rerank = in.readInt();
+        int[] subspaceStart = in.readInts();
+        int[] codebookOffset = in.readInts();
+        double[] codebooks = in.readDoubles();
+        byte[] codes = in.readBytes();
+        FeatureMatrix exactData = rerank > 0 ? KNNModelFile.readMatrix(in, classNames, labelIds) : null;
+        return new ProductQuantizationIndex(rows, subspaces, centroids, subspaceStart, codebooks, codebookOffset,
+                codes, rerank, exactData);
+    }
+
+    /**
+     * Apprend le dictionnaire d'un sous-espace avec K-Means et code les lignes
+     * avec l'affectation finale.
+     */
+    private void trainSubspace(FeatureMatrix data, int s, int maxIterations) {
+        int width = subspaceWidth(s);
+        double[] subvectors = new double[rows * width];
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(data.data(), data.offset(row) + subspaceStart[s], subvectors, row * width, width);
+        }
+        FeatureMatrix subMatrix = new FeatureMatrix(rows, width, subvectors, new String[rows], new int[rows],
+                new String[] { null });
+
+        KMeans kmeans = new KMeans(centroids, maxIterations);
+        KMeansResult result = kmeans.fit(subMatrix);
+        int[] assignments = result.getLabels();
+        System.arraycopy(result.getCentroids(), 0, codebooks, codebookOffset[s], centroids * width);
+        for (int row = 0; row < rows; row++) {
+            codes[row * subspaces + s] = (byte) assignments[row];
+        }
+    }
+
+    private int subspaceWidth(int s) {
+        return subspaceStart[s + 1] - subspaceStart[s];
+    }
+
+    @Override
+    public void search(double[] query, NeighborHeap neighbors) {
+        // Table des distances entre la requête et chaque centroïde
+        double[] table = new double[subspaces * centroids];
+        for (int s = 0; s < subspaces; s++) {
+            int width = subspaceWidth(s);
+            for (int c = 0; c < centroids; c++) {
+                table[s * centroids + c] = DistanceKernels.squaredL2(query, subspaceStart[s], codebooks,
+                        codebookOffset[s] + c * width, width);
+            }
+        }
+
+        NeighborHeap candidates = exactData == null ? neighbors
+                : new NeighborHeap(Math.min(rows, Math.max(rerank, neighbors.capacity())));
+        for (int row = 0; row < rows; row++) {
+            double threshold = candidates.threshold();
+            int base = row * subspaces;
+            double distance = 0.0;
+            for (int s = 0; s < subspaces && distance <= threshold; s++) {
+                distance += table[s * centroids + (codes[base + s] & 0xFF)];
+            }
+            candidates.offer(distance, row);
+        }
+
+        if (exactData != null) {
+            for (int i = 0; i < candidates.size(); i++) {
+                int row = candidates.index(i);
+                neighbors.offer(exactData.squaredDistance(row, query), row);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    @Override
+    public int dimension() {
+        return subspaceStart[subspaces];
+    }
+
+    /**
+     * @return La mémoire occupée par les codes, les dictionnaires et, en cas de
+     *         reclassement, les données d'origine (en octets).
+     */
+    public long memoryBytes() {
+        long bytes = codes.length + 8L * codebooks.length;
+        if (exactData != null) {
+            bytes += 8L * exactData.data().length;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Le rapport entre la mémoire des données non compressées et
+     *         {@link #memoryBytes()}.
+     */
+    public double compressionRatio() {
+        long uncompressed = 8L * rows * (subspaceStart[subspaces] - subspaceStart[0]);
+        return uncompressed / (double) memoryBytes();
+    }
+}
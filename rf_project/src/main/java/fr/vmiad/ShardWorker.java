@@ -0,0 +1,178 @@
+package fr.vmiad;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+
+/**
+ * Processus servant une partie (shard) des données d'entraînement d'un
+ * {@link ShardedKNN}.
+ *
+ * <p>
+ * Le worker charge un modèle enregistré avec {@link KNNModelFile}, écoute sur
+ * un port et répond aux requêtes du coordinateur par ses K plus proches
+ * voisins locaux (distance et label). Chaque connexion est servie par son
+ * propre thread. Au démarrage, le worker écrit {@code PORT <numéro>} sur la
+ * sortie standard.
+ * </p>
+ *
+ * <p>
+ * Protocole (flux binaires {@link DataInputStream} / {@link DataOutputStream}) :
+ * </p>
+ * <ul>
+ * <li>{@link #INFO} : réponse {@code int size, int k, int dimension} ;</li>
+ * <li>{@link #SEARCH} {@code int d, double[d]} : réponse {@code int count}
+ * puis, pour chaque voisin du plus proche au plus éloigné,
+ * {@code double distance, UTF label} ;</li>
+ * <li>{@link #SHUTDOWN} : arrêt du worker.</li>
+ * </ul>
+ *
+ * <p>
+ * Une requête invalide (dimension différente de celle du shard) ou une
+ * recherche en échec reçoit la réponse {@code int} {@link #ERROR} suivie d'un
+ * {@code UTF message}, puis la connexion est fermée : la requête n'ayant pas
+ * forcément été lue en entier, le flux ne peut plus être interprété.
+ * </p>
+ */
+public class ShardWorker {
+
+    static final byte INFO = 1;
+    static final byte SEARCH = 2;
+    static final byte SHUTDOWN = 3;
+    static final int ERROR = -1; // Nombre de voisins signalant une erreur
+
+    private final KNN shard; // Modèle local
+    private final ServerSocket server; // Socket d'écoute
+
+    /**
+     * Constructeur du worker, à l'écoute sur l'interface locale.
+     *
+     * @param shard Le modèle local.
+     * @param port  Le port d'écoute (0 pour un port libre).
+     * @throws IOException Si le port ne peut pas être ouvert.
+     */
+    public ShardWorker(KNN shard, int port) throws IOException {
+        this.shard = shard;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * @return Le port d'écoute.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepte les connexions jusqu'à la réception de {@link #SHUTDOWN} ou la
+     * fermeture du socket d'écoute.
+     */
+    public void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> handle(socket), "shard-worker-" + getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sert les requêtes d'une connexion.
+     */
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setTcpNoDelay(true);
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // Connexion fermée par le coordinateur
+                }
+                switch (op) {
+                    case INFO:
+                        out.writeInt(shard.index().size());
+                        out.writeInt(shard.k());
+                        out.writeInt(shard.index().dimension());
+                        break;
+                    case SEARCH:
+                        int length = in.readInt();
+                        if (length != shard.index().dimension()) {
+                            writeError("Dimension " + length + " au lieu de " + shard.index().dimension(), out);
+                            return;
+                        }
+                        double[] query = new double[length];
+                        for (int j = 0; j < length; j++) {
+                            query[j] = in.readDouble();
+                        }
+                        NeighborHeap neighbors;
+                        try {
+                            neighbors = shard.search(query);
+                        } catch (RuntimeException e) {
+                            writeError("Erreur de recherche : " + e, out);
+                            return;
+                        }
+                        writeNeighbors(neighbors, out);
+                        break;
+                    case SHUTDOWN:
+                        server.close();
+                        return;
+                    default:
+                        throw new IOException("Opération inconnue : " + op);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void writeError(String message, DataOutputStream out) throws IOException {
+        out.writeInt(ERROR);
+        out.writeUTF(message);
+        out.flush();
+    }
+
+    private void writeNeighbors(NeighborHeap neighbors, DataOutputStream out) throws IOException {
+        String[] classNames = shard.classNames();
+        int[] labelIds = shard.labelIds();
+        out.writeInt(neighbors.size());
+        for (int i = 0; i < neighbors.size(); i++) {
+            out.writeDouble(neighbors.distance(i));
+            out.writeUTF(classNames[labelIds[neighbors.index(i)]]);
+        }
+    }
+
+    /**
+     * Point d'entrée d'un worker lancé comme processus séparé.
+     *
+     * @param args Le chemin du fichier de modèle, puis éventuellement le port
+     *             d'écoute (0 par défaut).
+     * @throws IOException Si le modèle ne peut pas être chargé ou le port
+     *                     ouvert.
+     */
+    public static void main(String[] args) throws IOException {
+        KNN shard = KNNModelFile.open(Paths.get(args[0]));
+        ShardWorker worker = new ShardWorker(shard, args.length > 1 ? Integer.parseInt(args[1]) : 0);
+        System.out.println("PORT " + worker.getPort());
+        System.out.flush();
+        worker.serve();
+    }
+}
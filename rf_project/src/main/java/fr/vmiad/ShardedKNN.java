@@ -0,0 +1,461 @@
+package fr.vmiad;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinateur d'un KNN dont les données d'entraînement sont réparties entre
+ * plusieurs processus {@link ShardWorker}.
+ *
+ * <p>
+ * Chaque requête est envoyée en parallèle à tous les shards, qui renvoient
+ * leurs K plus proches voisins locaux ; les listes sont fusionnées en un seul
+ * tas de K voisins avant le vote. Les shards couvrant des intervalles
+ * consécutifs de lignes et les égalités de distance étant départagées par
+ * shard puis par ligne, le résultat est celui d'un {@link KNN} unique sur
+ * toutes les données (avec un index exact sur chaque shard).
+ * </p>
+ *
+ * <p>
+ * La latence de chaque shard (aller-retour vu du coordinateur) est mesurée
+ * pour repérer les shards lents : voir {@link #latencyReport()}.
+ * </p>
+ *
+ * <p>
+ * Chaque réponse est attendue au plus {@link #setTimeoutMillis(int) un délai
+ * donné}. Après une erreur d'entrée-sortie (délai dépassé, connexion coupée,
+ * erreur signalée par le worker), la connexion au shard est fermée et le
+ * shard est considéré hors service : les prédictions suivantes échouent
+ * aussitôt au lieu de lire un flux désynchronisé.
+ * </p>
+ */
+public class ShardedKNN implements AutoCloseable {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5; // Attente de l'arrêt des workers lancés
+    static final int DEFAULT_TIMEOUT_MILLIS = 30_000; // Délai de connexion et de réponse d'un shard
+
+    private final int k; // Nombre de voisins à considérer
+    private final Connection[] shards; // Une connexion par shard
+    private final List<Process> processes; // Workers lancés par ce coordinateur
+    private final ExecutorService executor; // Envoi des requêtes en parallèle
+
+    /**
+     * Constructeur du coordinateur, connecté à des workers déjà démarrés. Les
+     * adresses doivent être données dans l'ordre des lignes d'entraînement.
+     *
+     * @param addresses Les adresses des workers.
+     * @throws IOException              Si un worker est injoignable.
+     * @throws IllegalArgumentException Si les workers n'ont pas tous le même K.
+     */
+    public ShardedKNN(List<InetSocketAddress> addresses) throws IOException {
+        this(addresses, Collections.emptyList());
+    }
+
+    private ShardedKNN(List<InetSocketAddress> addresses, List<Process> processes) throws IOException {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("Aucun shard");
+        }
+        this.processes = processes;
+        this.shards = new Connection[addresses.size()];
+        try {
+            for (int s = 0; s < shards.length; s++) {
+                shards[s] = new Connection(addresses.get(s));
+            }
+        } catch (IOException e) {
+            closeConnections();
+            throw e;
+        }
+        this.k = shards[0].k;
+        for (Connection shard : shards) {
+            if (shard.k != k) {
+                closeConnections();
+                throw new IllegalArgumentException("Les shards n'ont pas le même K : " + k + " et " + shard.k);
+            }
+            if (shard.dimension != shards[0].dimension) {
+                closeConnections();
+                throw new IllegalArgumentException("Les shards n'ont pas la même dimension : "
+                        + shards[0].dimension + " et " + shard.dimension);
+            }
+        }
+        this.executor = Executors.newFixedThreadPool(shards.length, runnable -> {
+            Thread thread = new Thread(runnable, "sharded-knn");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Répartit les données d'entraînement en intervalles consécutifs de lignes,
+     * enregistre chaque shard avec {@link KNNModelFile} puis lance un processus
+     * {@link ShardWorker} par shard sur la machine locale (même JVM et même
+     * classpath que le processus courant).
+     *
+     * @param data          Les données d'entraînement.
+     * @param k             Le nombre de voisins à considérer.
+     * @param shardCount    Le nombre de shards.
+     * @param indexType     La structure de recherche de chaque shard.
+     * @param workDirectory Le répertoire où écrire les fichiers des shards.
+     * @return Le coordinateur connecté aux workers lancés, qu'il arrêtera à sa
+     *         fermeture.
+     * @throws IOException Si un shard ne peut pas être écrit ou un worker
+     *                     démarré.
+     */
+    public static ShardedKNN launchLocal(FeatureMatrix data, int k, int shardCount, KNN.IndexType indexType,
+            Path workDirectory) throws IOException {
+        if (shardCount < 1 || shardCount > Math.max(1, data.rows())) {
+            throw new IllegalArgumentException("Nombre de shards invalide : " + shardCount);
+        }
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int s = 0; s < shardCount; s++) {
+                FeatureMatrix part = data.slice(s * data.rows() / shardCount, (s + 1) * data.rows() / shardCount);
+                Path modelFile = workDirectory.resolve("shard-" + s + ".knn");
+                KNNModelFile.save(new KNN(k, part, indexType), modelFile);
+                Process process = startWorker(modelFile);
+                processes.add(process);
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), readPort(process)));
+            }
+            return new ShardedKNN(addresses, processes);
+        } catch (IOException | RuntimeException e) {
+            processes.forEach(Process::destroy);
+            throw e;
+        }
+    }
+
+    /**
+     * Lance un worker avec la même JVM et le même classpath que le processus
+     * courant.
+     */
+    private static Process startWorker(Path modelFile) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            // Mêmes noyaux de distance que le coordinateur
+            command.add("--add-modules");
+            command.add("jdk.incubator.vector");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(modelFile.toAbsolutePath().toString());
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Lit le port annoncé par un worker sur sa sortie standard.
+     */
+    private static int readPort(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("PORT ")) {
+                return Integer.parseInt(line.substring(5).trim());
+            }
+        }
+        throw new IOException("Le worker s'est arrêté sans annoncer son port");
+    }
+
+    /**
+     * @return Le nombre de shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Fixe le délai maximal d'attente d'une réponse de chaque shard.
+     *
+     * @param timeoutMillis Le délai en ms (0 : attente illimitée).
+     * @throws IOException Si le délai ne peut pas être appliqué.
+     */
+    public void setTimeoutMillis(int timeoutMillis) throws IOException {
+        for (Connection shard : shards) {
+            shard.setTimeoutMillis(timeoutMillis);
+        }
+    }
+
+    /**
+     * Prédit le label pour un nouveau point donné ses caractéristiques.
+     *
+     * @param features Les caractéristiques du point à prédire.
+     * @return Le label prédit.
+     * @throws IllegalStateException    Si un shard ne répond pas ou est hors
+     *                                  service.
+     * @throws IllegalArgumentException Si la dimension du point n'est pas
+     *                                  celle des shards.
+     */
+    public String predict(double[] features) {
+        return KNN.majorityLabel(countLabels(features));
+    }
+
+    /**
+     * Prédit les scores pour chaque classe pour un nouveau point donné ses
+     * caractéristiques.
+     *
+     * @param features Les caractéristiques du point à prédire.
+     * @return Un map des scores pour chaque classe.
+     * @throws IllegalStateException    Si un shard ne répond pas ou est hors
+     *                                  service.
+     * @throws IllegalArgumentException Si la dimension du point n'est pas
+     *                                  celle des shards.
+     */
+    public Map<String, Double> predictWithScores(double[] features) {
+        Map<String, Double> classScores = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : countLabels(features).entrySet()) {
+            classScores.put(entry.getKey(), entry.getValue() / (double) k);
+        }
+        return classScores;
+    }
+
+    /**
+     * Interroge tous les shards, fusionne leurs voisins et compte les labels des
+     * K plus proches.
+     */
+    private Map<String, Integer> countLabels(double[] features) {
+        if (features.length != shards[0].dimension) {
+            throw new IllegalArgumentException(
+                    "Dimension " + features.length + " au lieu de " + shards[0].dimension);
+        }
+        List<Callable<ShardResult>> tasks = new ArrayList<>();
+        for (Connection shard : shards) {
+            tasks.add(() -> shard.search(features));
+        }
+
+        // Indice de fusion s * k + rang : les égalités sont départagées par shard
+        // puis par ligne, comme dans un parcours unique
+        NeighborHeap merged = new NeighborHeap(k);
+        String[] labels = new String[shards.length * k];
+        try {
+            List<Future<ShardResult>> futures = executor.invokeAll(tasks);
+            for (int s = 0; s < shards.length; s++) {
+                ShardResult result = futures.get(s).get();
+                for (int i = 0; i < result.labels.length; i++) {
+                    labels[s * k + i] = result.labels[i];
+                    merged.offer(result.distances[i], s * k + i);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Requête distribuée interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Erreur d'un shard", e.getCause());
+        }
+
+        merged.sort();
+        Map<String, Integer> labelCounts = new HashMap<>();
+        for (int i = 0; i < merged.size(); i++) {
+            labelCounts.merge(labels[merged.index(i)], 1, Integer::sum);
+        }
+        return labelCounts;
+    }
+
+    /**
+     * @param shard L'indice du shard.
+     * @return La latence moyenne des requêtes envoyées à ce shard (en ms).
+     */
+    public double meanLatencyMillis(int shard) {
+        return shards[shard].meanLatencyMillis();
+    }
+
+    /**
+     * @param shard L'indice du shard.
+     * @return La latence maximale des requêtes envoyées à ce shard (en ms).
+     */
+    public double maxLatencyMillis(int shard) {
+        return shards[shard].maxLatencyMillis();
+    }
+
+    /**
+     * @return Une ligne par shard : adresse, nombre de lignes, nombre de
+     *         requêtes, latences moyenne et maximale.
+     */
+    public String latencyReport() {
+        StringBuilder report = new StringBuilder();
+        for (int s = 0; s < shards.length; s++) {
+            Connection shard = shards[s];
+            report.append(String.format(Locale.ROOT, "Shard %d (%s, %d lignes) : %d requêtes, moyenne %.3f ms,"
+                    + " max %.3f ms%n", s, shard.address, shard.size, shard.requestCount(),
+                    shard.meanLatencyMillis(), shard.maxLatencyMillis()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Ferme les connexions et arrête les workers lancés par
+     * {@link #launchLocal}.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        if (!processes.isEmpty()) {
+            for (Connection shard : shards) {
+                shard.shutdown();
+            }
+        }
+        closeConnections();
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private void closeConnections() {
+        for (Connection shard : shards) {
+            if (shard != null) {
+                shard.close();
+            }
+        }
+    }
+
+    /**
+     * Voisins renvoyés par un shard, du plus proche au plus éloigné.
+     */
+    private static final class ShardResult {
+        final double[] distances;
+        final String[] labels;
+
+        ShardResult(double[] distances, String[] labels) {
+            this.distances = distances;
+            this.labels = labels;
+        }
+    }
+
+    /**
+     * Connexion à un worker. Les requêtes sur une même connexion sont
+     * sérialisées ; la latence de chacune est cumulée. Après une erreur
+     * d'entrée-sortie, la connexion est fermée et n'est plus utilisée.
+     */
+    private static final class Connection {
+        final InetSocketAddress address;
+        final int size; // Nombre de lignes du shard
+        final int k; // K du modèle du shard
+        final int dimension; // Dimension des points du shard
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private long requests; // Nombre de requêtes
+        private long totalNanos; // Latence cumulée
+        private long maxNanos; // Latence maximale
+        private IOException failure; // Erreur ayant mis le shard hors service (null sinon)
+
+        Connection(InetSocketAddress address) throws IOException {
+            this.address = address;
+            this.socket = new Socket();
+            try {
+                socket.connect(address, DEFAULT_TIMEOUT_MILLIS);
+                socket.setSoTimeout(DEFAULT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeByte(ShardWorker.INFO);
+                out.flush();
+                this.size = in.readInt();
+                this.k = in.readInt();
+                this.dimension = in.readInt();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void setTimeoutMillis(int timeoutMillis) throws IOException {
+            socket.setSoTimeout(timeoutMillis);
+        }
+
+        synchronized ShardResult search(double[] query) throws IOException {
+            if (failure != null) {
+                throw new IOException("Shard " + address + " hors service", failure);
+            }
+            long start = System.nanoTime();
+            double[] distances;
+            String[] labels;
+            try {
+                out.writeByte(ShardWorker.SEARCH);
+                out.writeInt(query.length);
+                for (double value : query) {
+                    out.writeDouble(value);
+                }
+                out.flush();
+
+                int count = in.readInt();
+                if (count == ShardWorker.ERROR) {
+                    throw new IOException("Erreur du shard " + address + " : " + in.readUTF());
+                }
+                if (count < 0 || count > k) {
+                    throw new IOException("Réponse invalide du shard " + address + " : " + count + " voisins");
+                }
+                distances = new double[count];
+                labels = new String[count];
+                for (int i = 0; i < count; i++) {
+                    distances[i] = in.readDouble();
+                    labels[i] = in.readUTF();
+                }
+            } catch (IOException e) {
+                // Flux désynchronisé ou coupé : la connexion n'est plus réutilisée
+                failure = e;
+                close();
+                throw e;
+            }
+
+            long elapsed = System.nanoTime() - start;
+            requests++;
+            totalNanos += elapsed;
+            maxNanos = Math.max(maxNanos, elapsed);
+            return new ShardResult(distances, labels);
+        }
+
+        synchronized long requestCount() {
+            return requests;
+        }
+
+        synchronized double meanLatencyMillis() {
+            return requests == 0 ? 0.0 : totalNanos / (requests * 1e6);
+        }
+
+        synchronized double maxLatencyMillis() {
+            return maxNanos / 1e6;
+        }
+
+        synchronized void shutdown() {
+            try {
+                out.writeByte(ShardWorker.SHUTDOWN);
+                out.flush();
+            } catch (IOException e) {
+                // Le worker est déjà arrêté
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Rien à faire
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package fr.vmiad;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implémentation des noyaux de distance avec l'API Vector
+ * ({@code jdk.incubator.vector}). La largeur des vecteurs est celle préférée
+ * par la machine (4 doubles en AVX2, 8 en AVX-512) ; les éléments restants
+ * sont traités en scalaire.
+ *
+ * <p>
+ * Cette classe n'est chargée que si le module est présent au démarrage (voir
+ * {@link DistanceKernels}).
+ * </p>
+ */
+final class VectorDistanceKernel implements DistanceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public double squaredL2(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector diff = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+            acc = diff.fma(diff, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            double diff = a[aOffset + i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double l1(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector diff = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+            acc = acc.add(diff.abs());
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += Math.abs(a[aOffset + i] - b[bOffset + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            acc = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .fma(DoubleVector.fromArray(SPECIES, b, bOffset + i), acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,394 @@
+package fr.vmiad;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extraction des moments de Zernike d'une forme binaire (image PGM du
+ * répertoire {@code =Corpus/pgm}), au format des fichiers {@code .zrk} de
+ * {@code =Signatures/=Zernike7}.
+ *
+ * <p>
+ * La forme est l'ensemble des pixels sombres (niveau inférieur à la moitié de
+ * la valeur maximale). Le disque unité est centré sur son barycentre et a
+ * pour rayon la distance du pixel de forme le plus éloigné. Pour chaque
+ * ordre n de 2 à {@code order} et chaque répétition m ≥ 0 de même parité, le
+ * descripteur contient le module
+ * </p>
+ *
+ * <pre>
+ * |A(n, m)| = (n + 1) / π · |Σ R(n, m, ρ) e^(-imθ)| · {@value #AREA_SCALE} / N
+ * </pre>
+ *
+ * <p>
+ * où la somme porte sur les N pixels de la forme. Les ordres 0 et 1 sont
+ * omis : A(0, 0) ne dépend que de l'aire et A(1, 1) est nul au barycentre.
+ * La division par N rend le descripteur indépendant de la taille de la
+ * forme ; la constante {@value #AREA_SCALE} a été calée sur le corpus, dont
+ * les fichiers {@code .zrk} sont reproduits à quelques pourcents près (l'outil
+ * d'origine rééchantillonne la forme, ce qui n'est pas reproduit ici).
+ * </p>
+ *
+ * <p>
+ * Comme ρ^(n-2k) e^(-imθ) = (ρ²)^((n-2k-m)/2) · z̄^m avec z le pixel en
+ * coordonnées complexes du disque, une seule passe sur les pixels accumule
+ * les sommes Σ |z|^(2a) z̄^m sans aucun appel trigonométrique ; les
+ * coefficients des polynômes radiaux, précalculés une fois par ordre et
+ * partagés entre les instances, les combinent ensuite en moments. Le rayon
+ * n'étant connu qu'à la fin de la passe, les sommes sont accumulées en
+ * pixels puis ramenées au disque unité par une puissance du rayon.
+ * </p>
+ *
+ * <p>
+ * Une instance est immuable et peut être partagée entre threads.
+ * </p>
+ */
+public class ZernikeExtractor {
+
+    public static final int DEFAULT_ORDER = 7; // Ordre des fichiers de =Zernike7
+    static final double AREA_SCALE = 20000; // Aire de référence des moments (calée sur le corpus)
+
+    // Tables des polynômes radiaux, une par ordre
+    private static final Map<Integer, Basis> BASES = new ConcurrentHashMap<>();
+
+    private final int order; // Ordre maximal des moments
+    private final Basis basis; // Tables de l'ordre
+
+    /**
+     * Constructeur pour l'ordre {@value #DEFAULT_ORDER} des fichiers
+     * {@code .zrk}.
+     */
+    public ZernikeExtractor() {
+        this(DEFAULT_ORDER);
+    }
+
+    /**
+     * Constructeur.
+     *
+     * @param order L'ordre maximal des moments (au moins 2).
+     */
+    public ZernikeExtractor(int order) {
+        if (order < 2) {
+            throw new IllegalArgumentException("Ordre invalide : " + order);
+        }
+        this.order = order;
+        this.basis = BASES.computeIfAbsent(order, Basis::new);
+    }
+
+    /**
+     * @return Le nombre de moments d'un descripteur.
+     */
+    public int dimension() {
+        return basis.n.length;
+    }
+
+    /**
+     * Calcule le descripteur d'une image.
+     *
+     * @param image L'image de la forme.
+     * @return Les modules des moments, par ordre puis répétition croissants.
+     * @throws IllegalArgumentException Si l'image ne contient aucun pixel de
+     *                                  forme.
+     */
+    public double[] extract(PgmImage image) {
+        double[] values = new double[dimension()];
+        extract(image, values, 0);
+        return values;
+    }
+
+    /**
+     * Calcule le descripteur d'une image dans un tableau fourni, par exemple
+     * une ligne d'une matrice préallouée.
+     *
+     * @param image  L'image de la forme.
+     * @param target Le tableau à remplir.
+     * @param offset L'indice du premier moment dans le tableau.
+     * @throws IllegalArgumentException Si l'image ne contient aucun pixel de
+     *                                  forme.
+     */
+    public void extract(PgmImage image, double[] target, int offset) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] pixels = image.getPixels();
+        int threshold = (image.getMaxValue() + 1) / 2;
+
+        // Première passe : aire et barycentre
+        long count = 0;
+        long sumX = 0;
+        long sumY = 0;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                if ((pixels[i] & 0xFF) < threshold) {
+                    count++;
+                    sumX += x;
+                    sumY += y;
+                }
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("Aucun pixel de forme dans l'image");
+        }
+        double cx = (double) sumX / count;
+        double cy = (double) sumY / count;
+
+        // Seconde passe : sommes Σ |z|^(2a) z̄^m en pixels, et rayon
+        int[] index = basis.sumIndex;
+        double[] sumRe = new double[basis.sums];
+        double[] sumIm = new double[basis.sums];
+        double[] powRe = new double[order + 1];
+        double[] powIm = new double[order + 1];
+        double maxR2 = 0;
+        for (int y = 0, i = 0; y < height; y++) {
+            double dy = y - cy;
+            for (int x = 0; x < width; x++, i++) {
+                if ((pixels[i] & 0xFF) >= threshold) {
+                    continue;
+                }
+                double dx = x - cx;
+                double r2 = dx * dx + dy * dy;
+                if (r2 > maxR2) {
+                    maxR2 = r2;
+                }
+                // Puissances de z̄ = dx - i·dy
+                powRe[0] = 1;
+                powIm[0] = 0;
+                for (int m = 1; m <= order; m++) {
+                    powRe[m] = powRe[m - 1] * dx + powIm[m - 1] * dy;
+                    powIm[m] = powIm[m - 1] * dx - powRe[m - 1] * dy;
+                }
+                for (int m = 0, s = 0; m <= order; m++) {
+                    double re = powRe[m];
+                    double im = powIm[m];
+                    for (int a = 0; 2 * a + m <= order; a++, s++) {
+                        sumRe[s] += re;
+                        sumIm[s] += im;
+                        re *= r2;
+                        im *= r2;
+                    }
+                }
+            }
+        }
+
+        // Passage au disque unité : la somme (a, m) est de degré 2a + m
+        double radius = Math.sqrt(maxR2);
+        double[] scale = new double[order + 1];
+        scale[0] = 1;
+        for (int d = 1; d <= order; d++) {
+            scale[d] = scale[d - 1] / (radius > 0 ? radius : 1);
+        }
+        for (int s = 0; s < basis.sums; s++) {
+            sumRe[s] *= scale[basis.sumDegree[s]];
+            sumIm[s] *= scale[basis.sumDegree[s]];
+        }
+
+        // Combinaison des sommes par les coefficients des polynômes radiaux
+        double normalization = AREA_SCALE / (Math.PI * count);
+        for (int j = 0; j < basis.n.length; j++) {
+            int n = basis.n[j];
+            int m = basis.m[j];
+            double re = 0;
+            double im = 0;
+            double[] coefficients = basis.coefficients[j];
+            for (int k = 0; k < coefficients.length; k++) {
+                int s = index[m * (order + 1) + (n - 2 * k - m) / 2];
+                re += coefficients[k] * sumRe[s];
+                im += coefficients[k] * sumIm[s];
+            }
+            target[offset + j] = (n + 1) * normalization * Math.hypot(re, im);
+        }
+    }
+
+    /**
+     * Calcule en parallèle les descripteurs des images PGM d'un répertoire,
+     * dans l'ordre de leurs noms.
+     *
+     * @param directory   Le répertoire des images.
+     * @param concurrency Le nombre maximal d'images traitées simultanément.
+     * @return La matrice des descripteurs et les erreurs par fichier.
+     */
+    public DescReader.LoadResult extractDirectory(Path directory, int concurrency) {
+        List<File> files = DescReader.listDescFiles(directory.toString(), ".pgm");
+        files.sort(Comparator.comparing(File::getName));
+        List<Path> paths = new ArrayList<>(files.size());
+        for (File file : files) {
+            paths.add(file.toPath());
+        }
+        return extractAll(paths, concurrency);
+    }
+
+    /**
+     * Calcule en parallèle les descripteurs d'images PGM, directement dans
+     * une matrice préallouée (comme {@link DescReader#readAll(List, int)}
+     * pour les fichiers descripteurs) : chaque thread décode ses images et
+     * écrit dans la ligne de chacune, de sorte que l'ordre des lignes est
+     * celui de la liste. Une image illisible ou sans forme est écartée et son
+     * erreur conservée. Le label de chaque ligne est déduit du nom du
+     * fichier.
+     *
+     * @param images      Les images à traiter.
+     * @param concurrency Le nombre maximal d'images traitées simultanément.
+     * @return La matrice des descripteurs et les erreurs par fichier.
+     * @throws IllegalStateException Si le calcul est interrompu.
+     */
+    public DescReader.LoadResult extractAll(List<Path> images, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Nombre de traitements simultanés invalide : " + concurrency);
+        }
+        int rows = images.size();
+        int cols = dimension();
+        double[] data = new double[rows * cols];
+        Exception[] failures = new Exception[rows];
+
+        AtomicInteger next = new AtomicInteger();
+        Callable<Void> worker = () -> {
+            for (int row = next.getAndIncrement(); row < rows; row = next.getAndIncrement()) {
+                try {
+                    extract(PgmImage.read(images.get(row)), data, row * cols);
+                } catch (IOException | RuntimeException e) {
+                    failures[row] = e;
+                }
+            }
+            return null;
+        };
+        int threads = Math.max(1, Math.min(concurrency, rows));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> future : pool.invokeAll(Collections.nCopies(threads, worker))) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Extraction des moments interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Erreur lors de l'extraction des moments", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return DescReader.toLoadResult(images, data, cols, failures);
+    }
+
+    /**
+     * Tables d'un ordre : liste des moments (n, m), coefficients de leurs
+     * polynômes radiaux et position des sommes Σ |z|^(2a) z̄^m.
+     */
+    private static final class Basis {
+        final int[] n; // Ordre de chaque moment
+        final int[] m; // Répétition de chaque moment
+        final double[][] coefficients; // Coefficient du terme ρ^(n-2k) de R(n, m)
+        final int[] sumIndex; // Position de la somme (a, m), en m * (order + 1) + a
+        final int[] sumDegree; // Degré 2a + m de chaque somme
+        final int sums; // Nombre de sommes
+
+        Basis(int order) {
+            List<int[]> moments = new ArrayList<>();
+            for (int degree = 2; degree <= order; degree++) {
+                for (int repetition = degree % 2; repetition <= degree; repetition += 2) {
+                    moments.add(new int[] { degree, repetition });
+                }
+            }
+            n = new int[moments.size()];
+            m = new int[moments.size()];
+            coefficients = new double[moments.size()][];
+            for (int j = 0; j < moments.size(); j++) {
+                n[j] = moments.get(j)[0];
+                m[j] = moments.get(j)[1];
+                coefficients[j] = new double[(n[j] - m[j]) / 2 + 1];
+                for (int k = 0; k < coefficients[j].length; k++) {
+                    double c = factorial(n[j] - k)
+                            / (factorial(k) * factorial((n[j] + m[j]) / 2 - k) * factorial((n[j] - m[j]) / 2 - k));
+                    coefficients[j][k] = k % 2 == 0 ? c : -c;
+                }
+            }
+
+            // Sommes (a, m) avec 2a + m <= order, dans l'ordre de la passe
+            sumIndex = new int[(order + 1) * (order + 1)];
+            List<Integer> degrees = new ArrayList<>();
+            for (int rep = 0; rep <= order; rep++) {
+                for (int a = 0; 2 * a + rep <= order; a++) {
+                    sumIndex[rep * (order + 1) + a] = degrees.size();
+                    degrees.add(2 * a + rep);
+                }
+            }
+            sums = degrees.size();
+            sumDegree = degrees.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static double factorial(int value) {
+            double result = 1;
+            for (int i = 2; i <= value; i++) {
+                result *= i;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Calcule les descripteurs des images d'un répertoire et, si un
+     * répertoire de fichiers {@code .zrk} est donné, affiche l'écart relatif
+     * moyen et maximal avec ceux-ci.
+     *
+     * @param args Le répertoire des images, puis éventuellement celui des
+     *             fichiers {@code .zrk} de référence.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage : ZernikeExtractor <répertoire pgm> [<répertoire zrk>]");
+            return;
+        }
+        ZernikeExtractor extractor = new ZernikeExtractor();
+        long start = System.nanoTime();
+        DescReader.LoadResult result = extractor.extractDirectory(Paths.get(args[0]),
+                Runtime.getRuntime().availableProcessors());
+        result.printErrors();
+        FeatureMatrix matrix = result.getMatrix();
+        System.out.println(matrix.rows() + " descripteurs calculés en "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        if (args.length < 2) {
+            return;
+        }
+
+        // Écart relatif (norme euclidienne) avec les fichiers de référence
+        DescParser parser = DescReader.parser();
+        double sum = 0;
+        double max = 0;
+        int compared = 0;
+        for (int row = 0; row < matrix.rows(); row++) {
+            String name = matrix.getFileName(row);
+            Path reference = Paths.get(args[1], name.substring(0, name.lastIndexOf('.')) + ".zrk");
+            try {
+                double[] expected = parser.parse(reference);
+                double difference = 0;
+                double norm = 0;
+                for (int j = 0; j < expected.length && j < matrix.cols(); j++) {
+                    double delta = matrix.get(row, j) - expected[j];
+                    difference += delta * delta;
+                    norm += expected[j] * expected[j];
+                }
+                double error = Math.sqrt(difference / norm);
+                sum += error;
+                max = Math.max(max, error);
+                compared++;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Référence ignorée : " + reference + " (" + e.getMessage() + ")");
+            }
+        }
+        if (compared > 0) {
+            System.out.printf("Écart relatif avec %d fichiers .zrk : moyen %.4f, maximal %.4f%n", compared,
+                    sum / compared, max);
+        }
+    }
+}
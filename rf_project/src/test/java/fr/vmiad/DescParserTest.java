@@ -0,0 +1,42 @@
+package fr.vmiad;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Vérifie que {@link DescParser} donne, au bit près, le résultat de
+ * {@link Double#parseDouble(String)}, notamment aux limites du chemin rapide.
+ */
+class DescParserTest {
+
+    private static final String[] VALUES = {
+            // 18 et 19 chiffres significatifs : la mantisse ne tient plus dans un long
+            "999999999999999999", "9999999999999999999", "9223372036854775807", "9223372036854775808",
+            "-9999999999999999999", "0.9999999999999999999", "1.000000000000000001", "12345678901234567890e-5",
+            // Chemin rapide et formes particulières
+            "0", "-0", "10262.7", "2618.62", "1e22", "1e23", "1.7976931348623157e308", "4.9e-324", "NaN",
+            "-Infinity", "0x1p3" };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void parsesLikeParseDouble() throws IOException {
+        Path file = directory.resolve("valeurs.zrk");
+        Files.write(file, String.join("\n", VALUES).getBytes(StandardCharsets.US_ASCII));
+
+        double[] parsed = new DescParser().parse(file);
+        assertEquals(VALUES.length, parsed.length);
+        for (int i = 0; i < VALUES.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(Double.parseDouble(VALUES[i])),
+                    Double.doubleToRawLongBits(parsed[i]), VALUES[i]);
+        }
+    }
+}